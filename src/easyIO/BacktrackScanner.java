@@ -2,7 +2,9 @@ package easyIO;
 
 import java.io.IOException;
 import java.io.Reader;
-import java.util.LinkedList;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.NoSuchElementException;
 
 /**
@@ -42,14 +44,132 @@ public class BacktrackScanner extends java.io.Reader {
          void close() throws IOException;
      }
 
-    /** A source of input for the scanner in which the input comes from a Reader. */
-     public static class ReaderSource implements Source {
+    /**
+     * A source that delivers bare code points. Rather than tracking the line and
+     * column of every character, it only notes the offsets at which newlines occur;
+     * positions are reconstructed from that index when they are asked for, and are
+     * exactly those a source tracking them eagerly would report.
+     */
+    public static abstract class CodePointSource implements Source {
+        private final LineIndex lineIndex = new LineIndex();
+        /** The number of code points read so far. */
+        private long count = 0;
+
+        /** Return the next code point of the underlying input, or -1 if eof is reached. */
+        protected abstract int decodeNext() throws IOException;
+
+        /** Decode at least one and up to {@code len} code points of the underlying input
+         *  into {@code dst}, starting at index {@code off}, and return the number decoded,
+         *  or -1 if eof is reached. Blocks only until some input is available. Subclasses
+         *  that decode from a buffer should override this to deliver whole runs at once;
+         *  the default delivers one code point. */
+        protected int decode(int[] dst, int off, int len) throws IOException {
+            int c = decodeNext();
+            if (c == -1) return -1;
+            dst[off] = c;
+            return 1;
+        }
+
+        /** Decode up to {@code len} code points of the underlying input into {@code dst},
+         *  starting at index {@code off}, stopping before any that is not below 256, and
+         *  return the number decoded, or -1 if eof is reached. Return 0 if the next code
+         *  point is not below 256, or if the source cannot decode straight to bytes, as
+         *  by default; the scanner then uses {@code decode}. Subclasses that can check
+         *  cheaply override this, so that a scanner holding only Latin-1 characters
+         *  receives them with no intermediate copy. */
+        protected int decodeLatin1(byte[] dst, int off, int len) throws IOException {
+            return 0;
+        }
+
+        /** An estimate of the number of code points that can be read without blocking,
+         *  or 0 if it is unknown. The scanner uses it to size its buffer. */
+        protected int available() {
+            return 0;
+        }
+
+        /** Return the next code point, or -1 if eof is reached. */
+        public final int readCodePoint() throws IOException {
+            int c = decodeNext();
+            if (c == -1) return -1;
+            if (c == '\n') lineIndex.add(count);
+            count++;
+            return c;
+        }
+
+        /** Read at least one and up to {@code len} code points into {@code dst}, starting
+         *  at index {@code off}. Return the number read, or -1 if eof is reached. */
+        public final int read(int[] dst, int off, int len) throws IOException {
+            int n = decode(dst, off, len);
+            if (n <= 0) return -1;
+            for (int i = 0; i < n; i++) {
+                if (dst[off + i] == '\n') lineIndex.add(count + i);
+            }
+            count += n;
+            return n;
+        }
+
+        /** Read up to {@code len} code points below 256 into {@code dst}, starting at
+         *  index {@code off}. Return the number read, 0 if none could be read this way,
+         *  or -1 if eof is reached. */
+        final int readLatin1(byte[] dst, int off, int len) throws IOException {
+            int n = decodeLatin1(dst, off, len);
+            if (n <= 0) return n;
+            for (int i = 0; i < n; i++) {
+                if (dst[off + i] == '\n') lineIndex.add(count + i);
+            }
+            count += n;
+            return n;
+        }
+
+        /** Return the next character location or null if eof is reached. */
+        @Override
+        public Location read() throws IOException {
+            int c = readCodePoint();
+            if (c == -1) return null;
+            return location(count - 1, c);
+        }
+
+        /** The number of code points read from this source so far. */
+        public long offset() {
+            return count;
+        }
+        @Override
+        public int lineNo() {
+            return lineIndex.lineOf(count - 1);
+        }
+        @Override
+        public int column() {
+            return lineIndex.columnOf(count - 1);
+        }
+
+        /** The location of the code point ch read from this source at offset off. */
+        public Location location(long off, int ch) {
+            return new Location(this, lineIndex.lineOf(off), lineIndex.columnOf(off), ch);
+        }
+
+        /** Allow positions before offset off to be forgotten; they will not be asked for. */
+        void discardBefore(long off) {
+            lineIndex.discardBefore(off);
+        }
+
+        @Override
+        public String toString() {
+            return "\"" + name() + "\", line " + lineNo() + ", character " + column();
+        }
+    }
+
+    /** A source of input for the scanner in which the input comes from a Reader. The
+     *  reader is read a chunk at a time, so wrapping it in a {@code BufferedReader} is
+     *  unnecessary. */
+     public static class ReaderSource extends CodePointSource {
+        private static final int CHUNK_SIZE = 4096;
         private String name;
         private Reader reader;
-        private int lineno = 1;
-        private int charpos = 0;
-        /** A pending character to be delivered on next read(), if non-null. (Used for low surrogates) */
-        private Location pending = null;
+        /** Chars read from the reader but not yet delivered are chunk[next..limit-1]. */
+        private char[] chunk;
+        private int next = 0;
+        private int limit = 0;
+        private boolean eof = false;
 
         /** Create a source named n whose input comes from r */
         public ReaderSource(Reader r, String n) {
@@ -57,47 +177,73 @@ public class BacktrackScanner extends java.io.Reader {
             reader = r;
         }
         @Override
-        public String toString() {
-            return "\"" + name + "\", line " + lineno + ", character " + charpos;
-        }
-        @Override
         public String name() { return name; }
-        @Override
-        public int lineNo() {
-            return lineno;
+
+        /** Read more chars from the reader, keeping any that are not yet delivered.
+         *  Return false if there are no more to read. */
+        private boolean refill() throws IOException {
+            if (eof) return false;
+            if (chunk == null) chunk = new char[CHUNK_SIZE];
+            if (next > 0) {
+                System.arraycopy(chunk, next, chunk, 0, limit - next);
+                limit -= next;
+                next = 0;
+            }
+            int n = reader.read(chunk, limit, chunk.length - limit);
+            if (n == -1) {
+                eof = true;
+                return false;
+            }
+            limit += n;
+            return true;
         }
+
         @Override
-        public int column() {
-            return charpos;
+        protected int decodeNext() throws IOException {
+            if (next == limit && !refill()) return -1;
+            char c = chunk[next];
+            if (Character.isHighSurrogate(c)) {
+                if (next + 1 == limit) refill();
+                if (next + 1 < limit && Character.isLowSurrogate(chunk[next + 1])) {
+                    next += 2;
+                    return Character.toCodePoint(c, chunk[next - 1]);
+                }
+            }
+            next++;
+            return c;
         }
 
-        /** Return the next character location or null if eof is reached. */
-        public Location read() throws IOException {
-            if (pending != null) {
-                Location result = pending;
-                pending = null;
-                return result;
-            }
-            int c = reader.read();
-            if (c == -1) return null;
-            if (c == '\n') {
-                lineno++;
-                charpos = 0;
-            } else {
-                if (Character.isHighSurrogate((char) c)) {
-                    int lowS = reader.read();
-                    if (Character.isLowSurrogate((char) lowS)) {
-                        c = Character.toCodePoint((char) c, (char) lowS);
-                    } else {
-                        if (lowS != -1) {
-                            pending = new Location(this, lineno, charpos, (char) lowS);
+        @Override
+        protected int decode(int[] dst, int off, int len) throws IOException {
+            if (next == limit && !refill()) return -1;
+            int i = next, n = 0;
+            while (n < len && i < limit) {
+                char c = chunk[i];
+                if (Character.isHighSurrogate(c)) {
+                    if (i + 1 == limit) {
+                        if (n > 0) break; // pair it up on the next call
+                        next = i;
+                        refill();
+                        i = next;
+                        if (i + 1 == limit) { // unpaired at end of input
+                            dst[off + n++] = c;
+                            i++;
+                            break;
                         }
                     }
+                    if (Character.isLowSurrogate(chunk[i + 1])) {
+                        dst[off + n++] = Character.toCodePoint(c, chunk[i + 1]);
+                        i += 2;
+                        continue;
+                    }
                 }
-                charpos++;
+                dst[off + n++] = c;
+                i++;
             }
-            return new Location(this, lineno, charpos, c);
+            next = i;
+            return n;
         }
+
         public void close() throws IOException {
             reader.close();
         }
@@ -143,14 +289,57 @@ public class BacktrackScanner extends java.io.Reader {
         }
     }
 
-    LinkedList<Source> inputs = new LinkedList<>();
-
-    /** Input from suspended sources that should be restored once this input completes. */
-    private LinkedList<Location[]> suspendedInput = new LinkedList<>();
-    private Location[] buffer;
+    /** The chain of input still to be read into the buffer. When a source is included
+     *  ahead of characters already read, those characters are left in a
+     *  {@code Segment} that follows it in the chain. */
+    ArrayDeque<Source> inputs = new ArrayDeque<>();
+    /** The segment at the front of the chain that the last fill() read from, if no
+     *  characters have been added to the buffer since, and how many it read. */
+    private Segment replaying;
+    private int replayed;
+    /** The buffered input is kept as an array of code points, along with a table of
+     *  the runs of consecutive characters read from each source, rather than as one
+     *  {@code Location} per character. {@code Location} objects are only created on
+     *  request. As long as every character read is below 256, the code points are
+     *  stored compactly as bytes in {@code latin1} and {@code buffer} is null; the
+     *  first wider character inflates them into {@code buffer}, and {@code latin1}
+     *  becomes null.
+     *
+     *  The array is used circularly: position i of the buffer is stored at index
+     *  {@code (head + i) & mask}, where the length of the array is a power of two. So
+     *  discarding characters before the first mark just moves {@code head}, without
+     *  copying the rest.
+     *
+     *  If spilling is enabled, positions before {@code spilled} have been moved out of
+     *  the array into {@code spill}, and the array holds only positions from
+     *  {@code spilled} to {@code end}. */
+    private byte[] latin1;
+    private int[] buffer;
+    private int head;
+    private int mask;
+    /** Where code points are decoded before being narrowed into latin1. */
+    private int[] scratch;
+    private final RunTable runs = new RunTable();
     private int pos; // current input position (always in the deepest region)
     private int end; // marks end of characters actually read in buffer (last is at end-1)
     private int bufferOffset; // offset in characters from the input start to the beginning of the buffer
+    private SpillStore spill;
+    private int spilled = 0;
+    /** If nonzero, the number of characters beyond which the part of the buffer behind
+     *  the current position is spilled. */
+    private int spillLimit = 0;
+    /** When no marks are held, an array longer than this is replaced by a smaller one. */
+    private int retainedCapacity = DEFAULT_RETAINED_CAPACITY;
+    /** The largest number of characters held in the buffer at once. */
+    private int highWater = 0;
+    /** Incremented whenever the input at positions already seen may change. */
+    private long generation = 0;
+
+    /** Where buffer arrays are obtained and returned, if anywhere. */
+    private BufferPool pool;
+
+    /** The view returned by tokenView(), created on first use. */
+    private TokenSpan view;
 
     /** if non-zero, pendingChar is the low surrogate for a character whose
      *  high surrogate has already been returned by read()
@@ -167,10 +356,14 @@ public class BacktrackScanner extends java.io.Reader {
     private int[] marks;
     int nmarks;
     private static final int INITIAL_SIZE = 1;
+    /** The most characters read from a source into the buffer at once. */
+    private static final int READ_CHUNK = 1024;
+    private static final int DEFAULT_RETAINED_CAPACITY = 1 << 16;
 
     public boolean invariant() {
         assert nmarks >= 0;
-        assert end >= 0 && end <= buffer.length;
+        assert (latin1 == null) != (buffer == null);
+        assert end >= 0 && end - spilled <= capacity() && spilled <= end;
         assert nmarks == 0 || pos >= marks[nmarks-1] && pos <= end;
         for (int i = 0; i < nmarks; i++) {
             assert marks[i] <= pos;
@@ -180,7 +373,7 @@ public class BacktrackScanner extends java.io.Reader {
     }
     /** Dump the state of the scanner to w in a human-readable form. */
     public void dump(StringBuilder w) {
-        w.append("[Scanner buffer length=").append(buffer.length)
+        w.append("[Scanner buffer length=").append(capacity())
          .append(" pos=").append(pos)
          .append(" end=").append(end)
          .append(" nmarks=").append(nmarks);
@@ -191,7 +384,7 @@ public class BacktrackScanner extends java.io.Reader {
             w.append(']');
         }
 
-        if (pos < end) w.append("\ncurrent = ").append(buffer[pos]);
+        if (pos < end) w.append("\ncurrent = ").append(locationAt(pos));
         w.append(" \nCurrent source: ").append(source()).append("\nBuffer: ");
 
         int m = 0;
@@ -203,14 +396,16 @@ public class BacktrackScanner extends java.io.Reader {
                 w.append("[");
             }
             if (i == pos) w.append("^");
-            w.appendCodePoint(buffer[i].character);
+            w.appendCodePoint(charAt(i));
         }
         if (pos == end) w.append("^");
         w.append("...\n");
     }
 
     public BacktrackScanner() {
-        buffer = new Location[INITIAL_SIZE];
+        latin1 = new byte[INITIAL_SIZE];
+        mask = INITIAL_SIZE - 1;
+        head = 0;
         pos = 0;
         end = 0;
         bufferOffset = 0;
@@ -227,16 +422,60 @@ public class BacktrackScanner extends java.io.Reader {
         for (Source i : inputs) {
             i.close();
         }
+        if (spill != null) spill.close();
+        if (pool != null) {
+            clear();
+            if (latin1 != null) release(latin1);
+            else release(buffer);
+            if (scratch != null) release(scratch);
+            latin1 = new byte[INITIAL_SIZE];
+            buffer = scratch = null;
+            mask = INITIAL_SIZE - 1;
+        }
+    }
+
+    /**
+     * Prepare this scanner to read from s, as if it had just been created, but
+     * keeping the arrays it has grown so they need not be allocated again. Any
+     * sources not yet exhausted are closed, and all marks and buffered input are
+     * discarded. If s is null, the scanner has no input source (yet).
+     */
+    public void reuse(Source s) {
+        for (Source i : inputs) {
+            try {
+                i.close();
+            } catch (IOException e) {
+                // as when a source is exhausted
+            }
+        }
+        clear();
+        if (s != null) includeSource(s);
+    }
+
+    /** Discard all input, buffered or not, and all marks. */
+    private void clear() {
+        inputs.clear();
+        replaying = null;
+        runs.clear();
+        if (spill != null) spill.clear();
+        spilled = 0;
+        head = pos = end = 0;
+        bufferOffset = 0;
+        nmarks = 0;
+        pendingChar = 0;
+        highWater = 0;
+        generation++;
     }
 
     /** Name of the current input source. */
     public String source() {
-        return inputs.getFirst().name();
+        return firstInput().name();
     }
 
     /** The current line number. Line numbers start from 1. */
     public int lineNo() {
-        return inputs.getFirst().lineNo();
+        if (charsAhead()) return locationAt(pos).lineNo();
+        return firstInput().lineNo();
     }
 
     /** The current column number. Column numbers for printable characters start from 1,
@@ -245,7 +484,7 @@ public class BacktrackScanner extends java.io.Reader {
         try {
             return location().column();
         } catch (EOF e) {
-            return inputs.getFirst().column();
+            return firstInput().column();
         }
     }
 
@@ -261,21 +500,44 @@ public class BacktrackScanner extends java.io.Reader {
      */
     public Source currentSource() throws EOF {
         try {
-            return inputs.getFirst();
+            Source s = firstInput();
+            return (s instanceof Segment seg) ? seg.source() : s;
         } catch (NoSuchElementException e) {
             throw eof;
         }
     }
 
+    /** The first input in the chain, skipping segments that have been read back.
+     *  @throws NoSuchElementException if there is none. */
+    private Source firstInput() {
+        for (Source s : inputs) {
+            if (!(s instanceof Segment seg) || seg.remaining() > 0) return s;
+        }
+        throw new NoSuchElementException();
+    }
+
     /** Include a new input source to the input stream starting at the current position and
      * ahead of any existing inputs.
      */
     public void includeSource(Source s) {
-        inputs.addFirst(s);
-        Location[] suspended = new Location[end-pos];
-        System.arraycopy(buffer, pos, suspended, 0, end-pos);
-        suspendedInput.addFirst(suspended);
+        if (replaying != null) {
+            // Characters just replayed from the segment at the front of the chain go
+            // back to it rather than being copied.
+            int k = Math.min(end - pos, replayed);
+            replaying.next -= k;
+            end -= k;
+            replaying = null;
+        }
+        if (pos < end) inputs.addFirst(new Segment(this, pos, end));
+        if (pos < spilled) {
+            // The spilled input after pos is now in the segment.
+            spill.truncate(pos);
+            spilled = pos;
+        }
+        runs.truncate(pos);
         end = pos;
+        inputs.addFirst(s);
+        generation++;
     }
 
     /** Include r in the input stream ahead of any existing inputs.*/
@@ -286,9 +548,12 @@ public class BacktrackScanner extends java.io.Reader {
 
     /** Add r to the input stream after existing inputs. */
     public void appendSource(Reader r, String name) {
-        Source i = new ReaderSource(r, name);
-        inputs.addLast(i);
-        suspendedInput.addLast(new Location[0]);
+        appendSource(new ReaderSource(r, name));
+    }
+
+    /** Add s to the input stream after existing inputs. */
+    public void appendSource(Source s) {
+        inputs.addLast(s);
     }
 
     /** Whether there are characters already read ahead of the current position. */
@@ -298,108 +563,600 @@ public class BacktrackScanner extends java.io.Reader {
 
     /** Whether there is a character ahead in input. */
     public boolean hasNext() {
-        return (peek() != -1);
+        return (pendingChar != 0 || peek() != -1);
     }
 
     static final EOF eof = new EOF();
     static final UnexpectedInput uinp = new UnexpectedInput();
 
+    /** Read characters into cbuf[off..off+len-1], supplementary characters being
+     *  delivered as surrogate pairs. Characters already buffered are copied in one
+     *  pass; the input is only consulted, possibly blocking, when none are. */
     @Override public int read(char[] cbuf, int off, int len) {
-        if (!hasNext()) return -1;
+        if (len == 0) return 0;
         int count = 0;
-        try {
-            while (hasNext() && count < len) {
-                cbuf[off++] = next();
-                count++;
+        if (pendingChar != 0) {
+            cbuf[off] = pendingChar;
+            pendingChar = 0;
+            count++;
+        }
+        if (count < len && !charsAhead() && (count > 0 || !fill()))
+            return count > 0 ? count : -1;
+        return count + readBuffered(cbuf, off + count, len - count);
+    }
+
+    @Override public int read() {
+        if (pendingChar != 0) {
+            char c = pendingChar;
+            pendingChar = 0;
+            return c;
+        }
+        if (!charsAhead() && !fill()) return -1;
+        int ch = charAt(pos++);
+        if (ch < Character.MIN_SUPPLEMENTARY_CODE_POINT) return ch;
+        pendingChar = Character.lowSurrogate(ch);
+        return Character.highSurrogate(ch);
+    }
+
+    /** Copy up to len buffered characters to dst[off..], advancing past them.
+     *  Return the number of chars written. */
+    private int readBuffered(char[] dst, int off, int len) {
+        if (latin1 != null && pos >= spilled) {
+            int n = Math.min(len, end - pos);
+            byte[] b = latin1;
+            int h = head + pos, m = mask;
+            for (int i = 0; i < n; i++) dst[off + i] = (char) (b[(h + i) & m] & 0xFF);
+            pos += n;
+            return n;
+        }
+        int n = 0;
+        while (n < len && pos < end) {
+            int ch = charAt(pos++);
+            if (ch < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                dst[off + n++] = (char) ch;
+            } else {
+                dst[off + n++] = Character.highSurrogate(ch);
+                if (n < len) dst[off + n++] = Character.lowSurrogate(ch);
+                else pendingChar = Character.lowSurrogate(ch);
+            }
+        }
+        return n;
+    }
+
+    /** Skip up to n chars, counting a supplementary character as two. */
+    @Override public long skip(long n) {
+        if (n < 0) throw new IllegalArgumentException("skip value is negative");
+        long skipped = 0;
+        if (n > 0 && pendingChar != 0) {
+            pendingChar = 0;
+            skipped++;
+        }
+        while (skipped < n && (charsAhead() || fill())) {
+            if (latin1 != null && pos >= spilled) {
+                int k = (int) Math.min(n - skipped, end - pos);
+                pos += k;
+                skipped += k;
+                continue;
+            }
+            int ch = charAt(pos++);
+            skipped++;
+            if (ch >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                if (skipped < n) skipped++;
+                else pendingChar = Character.lowSurrogate(ch);
             }
-        } catch (EOF e) {
-            /* stop */
         }
-        return count;
+        return skipped;
+    }
+
+    /** Write all remaining input to out, a buffer at a time. */
+    @Override public long transferTo(Writer out) throws IOException {
+        char[] chunk = new char[READ_CHUNK];
+        long total = 0;
+        int n;
+        while ((n = read(chunk, 0, chunk.length)) != -1) {
+            out.write(chunk, 0, n);
+            total += n;
+        }
+        return total;
+    }
+
+    @Override public boolean ready() {
+        return pendingChar != 0 || charsAhead();
     }
 
     /** The next character ahead in the input. Equivalent to {@code begin(); c = nextCodePoint(); abort(); return c;}
-     *  except that it returns -1 if the end of input has been reached. */
+     *  except that it returns -1 if the end of input has been reached. If next() or
+     *  read() has just returned the high surrogate of a supplementary character, it
+     *  is the low surrogate. */
     public int peek() {
-        if (charsAhead())
-            return buffer[pos].character;
-        Location c;
-        if (inputs.isEmpty()) return -1;
-        try {
-            c = inputs.getFirst().read();
-        } catch (IOException e) {
-            c = null;
+        if (pendingChar != 0) return pendingChar;
+        if (charsAhead() || fill())
+            return charAt(pos);
+        return -1;
+    }
+
+    /** The code point at the current position, or -1 at the end of input. This is
+     *  peek() without the virtual call, for scanning loops in this package. */
+    final int lookahead() {
+        if (pos < end || fill()) return charAt(pos);
+        return -1;
+    }
+
+    /** Move past the character at the current position.
+     *  Requires: lookahead() != -1. */
+    final void step() {
+        pos++;
+    }
+
+    /** Scan past the characters ahead that satisfy p, stopping at the first that
+     *  does not or at the end of input, and return how many there were. The
+     *  buffered characters are tested in one loop, refilling only as it runs out.
+     *  p is never asked about -1. */
+    public int skipWhile(CharPredicate p) {
+        int n = 0;
+        while (pos < end || fill()) {
+            int i = pos, e = end;
+            if (latin1 != null && i >= spilled) {
+                byte[] b = latin1;
+                int h = head, m = mask;
+                while (i < e && p.test(b[(h + i) & m] & 0xFF)) i++;
+            } else {
+                while (i < e && p.test(charAt(i))) i++;
+            }
+            n += i - pos;
+            pos = i;
+            if (i < e) break;
+        }
+        return n;
+    }
+
+    /** Scan past the characters ahead other than c, stopping just before the next c
+     *  or at the end of input, and return how many there were. Characters in a
+     *  Latin-1 buffer are compared eight at a time. */
+    public int skipUntil(int c) {
+        return skipUntil(c, c, c, c);
+    }
+
+    /** Scan past the characters ahead that do not occur in delimiters, stopping just
+     *  before the next one that does or at the end of input, and return how many
+     *  there were. Sets of up to four delimiters are searched for as skipUntil(int)
+     *  does. */
+    public int skipUntilAny(String delimiters) {
+        int[] d = delimiters.codePoints().toArray();
+        if (d.length == 0 || d.length > 4) return skipWhile(c -> delimiters.indexOf(c) < 0);
+        int k = d.length - 1;
+        return skipUntil(d[0], d[Math.min(1, k)], d[Math.min(2, k)], d[Math.min(3, k)]);
+    }
+
+    private int skipUntil(int d0, int d1, int d2, int d3) {
+        // Delimiters beyond Latin-1 cannot occur in a Latin-1 buffer, so in searching
+        // one, they are replaced by one that can, if any.
+        int any = d0 < 256 ? d0 : d1 < 256 ? d1 : d2 < 256 ? d2 : d3 < 256 ? d3 : -1;
+        int b0 = d0 < 256 ? d0 : any, b1 = d1 < 256 ? d1 : any,
+            b2 = d2 < 256 ? d2 : any, b3 = d3 < 256 ? d3 : any;
+        int n = 0;
+        while (pos < end || fill()) {
+            int i = pos, e = end;
+            if (latin1 != null && i >= spilled) {
+                i = (any < 0) ? e : indexOfLatin1(i, e, b0, b1, b2, b3);
+            } else {
+                for (; i < e; i++) {
+                    int c = charAt(i);
+                    if (c == d0 || c == d1 || c == d2 || c == d3) break;
+                }
+            }
+            n += i - pos;
+            pos = i;
+            if (i < e) break;
+        }
+        return n;
+    }
+
+    /** The first position in [from, to) of the Latin-1 buffer that holds any of
+     *  c0..c3, or to if there is none. Requires: from >= spilled. */
+    private int indexOfLatin1(int from, int to, int c0, int c1, int c2, int c3) {
+        boolean single = (c0 == c1 && c0 == c2 && c0 == c3);
+        while (from < to) {
+            int p = (head + from) & mask;
+            int q = p + Math.min(to - from, latin1.length - p);
+            int r = single ? Swar.indexOf(latin1, p, q, c0)
+                           : Swar.indexOfAny(latin1, p, q, c0, c1, c2, c3);
+            from += r - p;
+            if (r < q) break;
         }
+        return from;
+    }
+
+    /** Scan past the characters ahead that satisfy p and return them as a string.
+     *  @see #skipWhile(CharPredicate) */
+    public String scanWhile(CharPredicate p) {
+        mark();
+        skipWhile(p);
+        String result = getToken();
+        accept();
+        return result;
+    }
 
-        if (c == null) {
-            Source fst = removeInput();
+    /** Read more input into the buffer, moving on to the next input source if the
+     *  current one is exhausted. Return whether any characters were added.
+     *  Requires: there are no characters ahead. */
+    private boolean fill() {
+        while (!inputs.isEmpty()) {
+            Source src = inputs.getFirst();
+            int n;
+            replaying = null;
+            try {
+                if (src instanceof Segment seg) {
+                    n = Math.min(seg.remaining(), READ_CHUNK);
+                    if (n > 0) {
+                        if (room() < n) grow(n);
+                        runs.appendRange(seg.runs, seg.next, seg.next + n, end);
+                        put(seg.chars, seg.next, n);
+                        seg.next += n;
+                        replaying = seg;
+                        replayed = n;
+                    }
+                } else if (src instanceof CodePointSource cs) {
+                    int avail = cs.available();
+                    int want = (avail > 0 && avail < READ_CHUNK) ? avail : READ_CHUNK;
+                    if (nmarks == 0 && capacity() > retainedCapacity) shrink(want);
+                    if (room() < want) grow(want);
+                    long offset = cs.offset();
+                    if (latin1 != null) {
+                        int p = (head + end) & mask;
+                        n = cs.readLatin1(latin1, p, Math.min(room(), latin1.length - p));
+                        if (n > 0) {
+                            runs.addIndexed(end, cs, offset);
+                            end += n;
+                        } else if (n == 0) {
+                            // Decode through scratch, widening the buffer if need be.
+                            if (scratch == null || scratch.length < want) {
+                                if (scratch != null) release(scratch);
+                                scratch = newInts(powerOfTwo(want));
+                            }
+                            n = cs.read(scratch, 0, want);
+                            if (n > 0) {
+                                runs.addIndexed(end, cs, offset);
+                                put(scratch, 0, n);
+                            }
+                        }
+                    } else {
+                        int p = (head + end) & mask;
+                        n = cs.read(buffer, p, Math.min(room(), buffer.length - p));
+                        if (n > 0) {
+                            runs.addIndexed(end, cs, offset);
+                            end += n;
+                        }
+                    }
+                } else {
+                    Location loc = src.read();
+                    n = (loc == null) ? -1 : 1;
+                    if (n > 0) {
+                        if (room() == 0) grow(1);
+                        runs.addLocation(end, loc);
+                        put(loc.character);
+                    }
+                }
+            } catch (IOException e) {
+                n = -1;
+            }
+            if (n > 0) {
+                int window = end - (nmarks > 0 ? marks[0] : pos);
+                if (window > highWater) highWater = window;
+                assert invariant();
+                return true;
+            }
+            Source fst = inputs.removeFirst();
             try {
                 fst.close();
             } catch (IOException e) {
                 // It's only being read from so harmless to ignore?
             }
-            if (inputs.size() == 0) return -1;
-            return peek();
         }
+        return false;
+    }
 
-        append(c);
-        assert invariant();
-        return c.character;
+    /** The number of characters the buffer can hold. */
+    private int capacity() {
+        return mask + 1;
     }
 
-    private Source removeInput() {
-        Source result = inputs.removeFirst();
-        assert pos == end; // buffer must be empty
-        Location[] suspended = suspendedInput.removeFirst();
-        for (Location l : suspended) append(l);
-        return result;
+    /** The number of characters that can be appended to the buffer without growing it. */
+    private int room() {
+        return capacity() - (end - spilled);
+    }
+
+    /** The code point at position i of the buffer. */
+    int charAt(int i) {
+        if (i < spilled) return spill.get(i);
+        return latin1 != null ? latin1[(head + i) & mask] & 0xFF : buffer[(head + i) & mask];
+    }
+
+    /** Append c to the buffer. Requires: there is room for it. */
+    private void put(int c) {
+        if (latin1 != null) {
+            if (c < 256) {
+                latin1[(head + end++) & mask] = (byte) c;
+                return;
+            }
+            inflate();
+        }
+        buffer[(head + end++) & mask] = c;
     }
 
-    private void append(Location loc) {
-        int n = buffer.length;
-        assert end <= n;
-        if (end == n) {
-            grow();
+    /** Append cs[off..off+n-1] to the buffer. Requires: there is room for them. */
+    private void put(int[] cs, int off, int n) {
+        if (latin1 != null) {
+            byte[] b = latin1;
+            int h = head, m = mask, e = end;
+            for (int i = 0; i < n; i++) {
+                int c = cs[off + i];
+                if (c >= 256) {
+                    end = e;
+                    inflate();
+                    put(cs, off + i, n - i);
+                    return;
+                }
+                b[(h + e++) & m] = (byte) c;
+            }
+            end = e;
+            return;
+        }
+        int p = (head + end) & mask;
+        int k = Math.min(n, buffer.length - p);
+        System.arraycopy(cs, off, buffer, p, k);
+        System.arraycopy(cs, off + k, buffer, 0, n - k);
+        end += n;
+    }
+
+    /** Switch from the compact representation of the buffer to the full one. */
+    private void inflate() {
+        int[] b = newInts(latin1.length);
+        for (int i = 0; i < b.length; i++) b[i] = latin1[i] & 0xFF;
+        release(latin1);
+        buffer = b;
+        latin1 = null;
+        if (scratch != null) release(scratch);
+        scratch = null;
+    }
+
+    /** Copy the characters at positions from..to-1 of the buffer to dst, starting at
+     *  index off, as chars if dst is a byte[] (requires: the buffer is compact) and as
+     *  code points if it is an int[]. */
+    private void copyOut(int from, int to, Object dst, int off) {
+        if (from < spilled) {
+            int k = Math.min(to, spilled) - from;
+            if (dst instanceof int[] d) {
+                spill.copyOut(from, from + k, d, off);
+            } else {
+                byte[] d = (byte[]) dst;
+                for (int i = 0; i < k; i++) d[off + i] = (byte) spill.get(from + i);
+            }
+            from += k;
+            off += k;
+            if (from == to) return;
+        }
+        int p = (head + from) & mask;
+        int n = to - from;
+        int k = Math.min(n, capacity() - p);
+        if (latin1 != null && dst instanceof int[] d) {
+            for (int i = 0; i < n; i++) d[off + i] = latin1[(p + i) & mask] & 0xFF;
+            return;
+        }
+        Object src = (latin1 != null) ? latin1 : buffer;
+        System.arraycopy(src, p, dst, off, k);
+        System.arraycopy(src, 0, dst, off + k, n - k);
+    }
+
+    /** Characters that had been read ahead of the position where
+     *  {@code includeSource()} inserted a new source. They wait in the input chain
+     *  behind that source and are read back into the buffer a chunk at a time, keeping
+     *  the locations they were read from. A segment is only created for characters
+     *  that came from a real source; those read back from a segment are returned to it
+     *  if another source is inserted before them, so nested includes copy nothing. */
+    private static final class Segment implements Source {
+        final int[] chars;
+        final RunTable runs;
+        /** chars[next..] have not been read back yet. */
+        int next = 0;
+
+        /** The characters at positions from..to-1 of the buffer of sc. */
+        Segment(BacktrackScanner sc, int from, int to) {
+            chars = new int[to - from];
+            sc.copyOut(from, to, chars, 0);
+            runs = sc.runs.slice(from, to);
+        }
+
+        int remaining() {
+            return chars.length - next;
+        }
+
+        /** The source the next character was read from. */
+        Source source() {
+            return runs.sourceAt(Math.min(next, chars.length - 1));
+        }
+
+        public String name() {
+            return source().name();
+        }
+        public int lineNo() {
+            return next < chars.length ? runs.locationAt(next, chars[next]).lineNo()
+                                       : source().lineNo();
+        }
+        public int column() {
+            return next < chars.length ? runs.locationAt(next, chars[next]).column()
+                                       : source().column();
+        }
+        public Location read() {
+            if (next == chars.length) return null;
+            Location loc = runs.locationAt(next, chars[next]);
+            next++;
+            return loc;
+        }
+        public void close() {
         }
-        buffer[end++] = loc;
-        assert invariant();
     }
 
     /**
-     * Allocate a new prefix array at least twice as big as what is known to be
-     * needed, and copy all active input to that array. Anything before the
-     * first mark (or the current position if there is no mark) is discarded to
-     * save space.
+     * Discard anything before the first mark (or the current position if there is
+     * no mark), and make sure there is room for at least {@code extra} more
+     * characters, allocating a new array at least twice as big as what is known to be
+     * needed if the current one is more than half full.
      */
-    private void grow() {
+    private void grow(int extra) {
+        dropPrefix();
+        if (spillLimit > 0 && end - spilled + extra > spillLimit && pos > spilled) {
+            spillTo(pos);
+        }
+        int needed = end - spilled + extra;
+        if (needed * 2 > capacity()) resize(Math.max(powerOfTwo(needed * 2), INITIAL_SIZE));
+    }
+
+    /** Move the characters at positions before p out of the array into the spill store. */
+    private void spillTo(int p) {
+        if (spill == null) spill = new SpillStore();
+        int[] cs = new int[Math.min(p - spilled, READ_CHUNK * 8)];
+        while (spilled < p) {
+            int k = Math.min(p - spilled, cs.length);
+            copyOut(spilled, spilled + k, cs, 0);
+            spill.append(cs, 0, k);
+            spilled += k;
+        }
+    }
+
+    /** Discard anything before the first mark, or the current position if there is
+     *  no mark, renumbering the remaining positions. */
+    private void dropPrefix() {
         int start = pos;
         if (nmarks != 0) start = marks[0];
-        int newlen = end - start;
-        Location[] np;
-        if (newlen * 2 < buffer.length) {
-            np = buffer;
-        } else {
-            np = new Location[newlen * 2];
+        if (start == 0) return;
+        runs.dropPrefix(start, end);
+        if (spilled > 0) {
+            int k = Math.min(start, spilled);
+            spill.discard(k);
+            spilled -= k;
         }
-        System.arraycopy(buffer, start, np, 0, newlen);
-        buffer = np;
         for (int i = 0; i < nmarks; i++) {
             marks[i] -= start;
         }
+        head = (head + start) & mask;
         pos -= start;
-        end = newlen;
+        end -= start;
         bufferOffset += start;
     }
 
+    /** Replace the buffer array with one of length n, a power of two that can hold
+     *  all the buffered characters that have not been spilled. */
+    private void resize(int n) {
+        assert n >= end - spilled && Integer.bitCount(n) == 1;
+        if (latin1 != null) {
+            byte[] np = newBytes(n);
+            copyOut(spilled, end, np, 0);
+            release(latin1);
+            latin1 = np;
+        } else {
+            int[] np = newInts(n);
+            copyOut(spilled, end, np, 0);
+            release(buffer);
+            buffer = np;
+        }
+        mask = n - 1;
+        head = -spilled & mask;
+    }
+
+    /** Replace an oversized buffer array, once no marks are keeping its contents
+     *  alive, with one large enough for the characters ahead and extra more. */
+    private void shrink(int extra) {
+        dropPrefix();
+        int n = Math.max(powerOfTwo((end - spilled + extra) * 2), INITIAL_SIZE);
+        if (n < capacity()) resize(n);
+    }
+
+    private byte[] newBytes(int n) {
+        return pool != null ? pool.bytes(n) : new byte[n];
+    }
+
+    private int[] newInts(int n) {
+        return pool != null ? pool.ints(n) : new int[n];
+    }
+
+    private void release(byte[] b) {
+        if (pool != null) pool.release(b);
+    }
+
+    private void release(int[] a) {
+        if (pool != null) pool.release(a);
+    }
+
+    /** Obtain buffer arrays from p, and return them to it when they are replaced
+     *  or the scanner is closed. Once closed, a scanner with a pool can only be
+     *  used again after {@code reuse}. If p is null, arrays are allocated
+     *  and left to the garbage collector. */
+    public void setBufferPool(BufferPool p) {
+        pool = p;
+    }
+
+    /** The smallest power of two that is at least n. */
+    private static int powerOfTwo(int n) {
+        return n <= 1 ? 1 : Integer.highestOneBit(n - 1) << 1;
+    }
+
+    /** The number of characters the buffer can currently hold. */
+    public int bufferCapacity() {
+        return capacity();
+    }
+
+    /** The number of characters currently held in the buffer: those from the first
+     *  mark (or the current position if there is no mark) to the end of the input
+     *  read so far. */
+    public int windowSize() {
+        return end - (nmarks > 0 ? marks[0] : pos);
+    }
+
+    /** The largest number of characters that have been held in the buffer at once. */
+    public int highWaterMark() {
+        return highWater;
+    }
+
+    /** A number that changes whenever a position this scanner has already reached
+     *  may come to hold a different character: when it is reused, or a source is
+     *  included ahead of the input after the current position. Anything remembered
+     *  about the input by position is stale once the generation has changed. */
+    public long generation() {
+        return generation;
+    }
+
+    /** Keep at most about n characters of input in memory, however far back the
+     *  first mark is. When the buffer would grow beyond that, the part of it behind
+     *  the current position is written to a temporary file, and read back from there
+     *  if {@code abort()} returns to it or {@code getToken()} includes it. A value of
+     *  0, the default, keeps everything in memory. */
+    public void setSpillLimit(int n) {
+        spillLimit = (n <= 0) ? 0 : Math.max(n, 2 * READ_CHUNK);
+    }
+
+    /** Set the largest buffer capacity retained when no marks are held. A longer
+     *  buffer, grown to hold the input between a mark and the current position,
+     *  is replaced by a smaller one the next time input is read with no marks held.
+     *  The default is 65536 characters. */
+    public void setRetainedCapacity(int n) {
+        retainedCapacity = Math.max(n, 2 * READ_CHUNK);
+    }
+
     /** Location in input source of the current position. */
     public Location location() throws EOF {
         if (pos == end) peek();
-        if (pos < buffer.length) return buffer[pos];
+        if (pos < end) return locationAt(pos);
         else throw eof;
     }
     /** Location in input source of the last mark. */
     public Location getMarkLocation() {
-        return buffer[marks[nmarks-1]];
+        return locationAt(marks[nmarks-1]);
+    }
+
+    /** A new Location describing the buffered character at position i. */
+    private Location locationAt(int i) {
+        return runs.locationAt(i, charAt(i));
     }
 
     /** Add a mark at the current position. */
@@ -447,12 +1204,45 @@ public class BacktrackScanner extends java.io.Reader {
     /** Return a string containing the characters from the most recent mark to the current position. */
     public String getToken() {
         assert nmarks > 0 && invariant();
-        StringBuilder r = new StringBuilder();
-        int s = marks[nmarks-1];
-        for (int j = s; j < pos; j++) {
-            r.appendCodePoint(buffer[j].character);
+        return text(marks[nmarks-1], pos);
+    }
+
+    /** Return a view of the characters from the most recent mark to the current
+     *  position, without copying them. The same view is reused by every call, and
+     *  it is only valid until the scanner is next used.
+     *  @see TokenSpan */
+    public TokenSpan tokenView() {
+        assert nmarks > 0;
+        if (view == null) view = new TokenSpan(this);
+        view.set(marks[nmarks-1], pos);
+        return view;
+    }
+
+    /** A string containing the characters at positions s..e-1 of the buffer. */
+    String text(int s, int e) {
+        int p = (head + s) & mask;
+        if (s >= spilled && p + (e - s) <= capacity()) { // contiguous in the array
+            if (latin1 != null) return new String(latin1, p, e - s, StandardCharsets.ISO_8859_1);
+            return new String(buffer, p, e - s);
+        }
+        if (latin1 != null && s >= spilled) {
+            byte[] b = new byte[e - s];
+            copyOut(s, e, b, 0);
+            return new String(b, StandardCharsets.ISO_8859_1);
+        }
+        int[] b = new int[e - s];
+        copyOut(s, e, b, 0);
+        return new String(b, 0, b.length);
+    }
+
+    /** The number of supplementary characters at positions s..e-1 of the buffer. */
+    int countSupplementary(int s, int e) {
+        if (latin1 != null && s >= spilled) return 0;
+        int n = 0;
+        for (int i = s; i < e; i++) {
+            if (charAt(i) >= Character.MIN_SUPPLEMENTARY_CODE_POINT) n++;
         }
-        return r.toString();
+        return n;
     }
 
     /**
@@ -465,15 +1255,13 @@ public class BacktrackScanner extends java.io.Reader {
         assert nmarks > 0;
         pos = marks[nmarks-1];
         nmarks--;
+        pendingChar = 0;
     }
 
     /** Advance past the next character, if any. Do nothing if at end of input. */
     public void advance() {
-        try {
-            next();
-        } catch (EOF e) {
-            // do nothing
-        }
+        if (pendingChar != 0) pendingChar = 0;
+        else if (pos < end || fill()) pos++;
     }
 
     public final boolean lowSurrogate(int ch) {
@@ -486,37 +1274,39 @@ public class BacktrackScanner extends java.io.Reader {
      *  method as two chars in sequence, representing a surrogate pair.
      */
     public char next() throws EOF {
+        if (pendingChar != 0) {
+            char c = pendingChar;
+            pendingChar = 0;
+            return c;
+        }
         int ch = nextCodePoint();
-        if (Character.charCount(ch) == 1)
+        if (ch < Character.MIN_SUPPLEMENTARY_CODE_POINT)
             return (char) ch;
-        char[] chs = Character.toChars(ch);
-        pendingChar = chs[1];
-        return chs[0];
+        pendingChar = Character.lowSurrogate(ch);
+        return Character.highSurrogate(ch);
     }
 
-    /** Read the next character from the stream. Throw EOF
-     *  if there is no next character. If the next character is
-     *  a Unicode supplementary character, it is reported by this
-     *  method as two chars in sequence, representing a surrogate pair.
+    /** Read the next code point from the stream. Throw EOF
+     *  if there is no next character.
      */
     public int nextCodePoint() throws EOF {
-        if (charsAhead()) {
-            return buffer[pos++].character;
-        }
-        try {
-            if (inputs.size() == 0) throw eof;
-            Location c = inputs.getFirst().read();
-            if (c == null) {
-                inputs.removeFirst();
-                if (inputs.size() > 0) return nextCodePoint();
-                throw eof;
-            }
-            append(c);
-            pos++;
-            return c.character;
-        } catch (IOException e) {
-            throw eof;
+        int c = nextCodePointOrEOF();
+        if (c == -1) throw eof;
+        return c;
+    }
+
+    /** Read the next code point from the stream, or return -1
+     *  if there is no next character. If next() or read() has just returned the high
+     *  surrogate of a supplementary character, this is the low surrogate.
+     */
+    public int nextCodePointOrEOF() {
+        if (pendingChar != 0) {
+            char c = pendingChar;
+            pendingChar = 0;
+            return c;
         }
+        if (pos < end || fill()) return charAt(pos++);
+        return -1;
     }
 
     /** Scan the characters of string s from the input.
@@ -0,0 +1,96 @@
+package easyIO;
+
+/**
+ * A pool of the arrays that scanners use for their buffers. Scanners that are given
+ * the same pool, and created and closed in turn, as when one is used per message,
+ * recycle their arrays through it instead of allocating new ones. The pool keeps a
+ * few arrays of each power-of-two length, up to a maximum length.
+ *
+ * A pool is not safe for concurrent use; {@code perThread()} gives each thread a
+ * pool of its own.
+ * @see BacktrackScanner#setBufferPool(BufferPool)
+ */
+public class BufferPool {
+    private static final int LENGTHS = 31; // one per power of two
+    private static final int PER_LENGTH = 4;
+    private static final int DEFAULT_MAX_LENGTH = 1 << 20;
+    private static final ThreadLocal<BufferPool> PER_THREAD =
+        ThreadLocal.withInitial(BufferPool::new);
+
+    /** The pooled arrays of length 2^k are bytes[k][0..nbytes[k]-1], likewise ints. */
+    private final byte[][][] bytes = new byte[LENGTHS][][];
+    private final int[] nbytes = new int[LENGTHS];
+    private final int[][][] ints = new int[LENGTHS][][];
+    private final int[] nints = new int[LENGTHS];
+    private final int maxLength;
+    private long reuses = 0, allocations = 0;
+
+    /** Create a pool that keeps arrays of up to 2^20 elements. */
+    public BufferPool() {
+        this(DEFAULT_MAX_LENGTH);
+    }
+
+    /** Create a pool that keeps arrays of up to maxLength elements. */
+    public BufferPool(int maxLength) {
+        this.maxLength = maxLength;
+    }
+
+    /** The pool for the current thread. */
+    public static BufferPool perThread() {
+        return PER_THREAD.get();
+    }
+
+    /** A byte array of length n, a power of two, with undefined contents. */
+    byte[] bytes(int n) {
+        int k = Integer.numberOfTrailingZeros(n);
+        if (nbytes[k] > 0) {
+            reuses++;
+            byte[] b = bytes[k][--nbytes[k]];
+            bytes[k][nbytes[k]] = null;
+            return b;
+        }
+        allocations++;
+        return new byte[n];
+    }
+
+    /** An int array of length n, a power of two, with undefined contents. */
+    int[] ints(int n) {
+        int k = Integer.numberOfTrailingZeros(n);
+        if (nints[k] > 0) {
+            reuses++;
+            int[] a = ints[k][--nints[k]];
+            ints[k][nints[k]] = null;
+            return a;
+        }
+        allocations++;
+        return new int[n];
+    }
+
+    /** Return b to the pool, which may keep it. b must no longer be used. */
+    void release(byte[] b) {
+        int n = b.length;
+        if (n > maxLength || Integer.bitCount(n) != 1) return;
+        int k = Integer.numberOfTrailingZeros(n);
+        if (bytes[k] == null) bytes[k] = new byte[PER_LENGTH][];
+        if (nbytes[k] < PER_LENGTH) bytes[k][nbytes[k]++] = b;
+    }
+
+    /** Return a to the pool, which may keep it. a must no longer be used. */
+    void release(int[] a) {
+        int n = a.length;
+        if (n > maxLength || Integer.bitCount(n) != 1) return;
+        int k = Integer.numberOfTrailingZeros(n);
+        if (ints[k] == null) ints[k] = new int[PER_LENGTH][];
+        if (nints[k] < PER_LENGTH) ints[k][nints[k]++] = a;
+    }
+
+    /** The number of requests for an array that were met from the pool. */
+    public long reuses() {
+        return reuses;
+    }
+
+    /** The number of requests for an array that needed a new one. */
+    public long allocations() {
+        return allocations;
+    }
+}
@@ -0,0 +1,26 @@
+package easyIO;
+
+/** A CharPredicate whose answers for ASCII characters are kept in a bit table. */
+final class CharClass implements CharPredicate {
+    /** Bit c of low is set if character c, for c < 64, satisfies the predicate;
+     *  bit c - 64 of high likewise for 64 <= c < 128. */
+    private final long low, high;
+    private final CharPredicate rest;
+
+    CharClass(CharPredicate p) {
+        long lo = 0, hi = 0;
+        for (int c = 0; c < 64; c++) {
+            if (p.test(c)) lo |= 1L << c;
+            if (p.test(c + 64)) hi |= 1L << c;
+        }
+        low = lo;
+        high = hi;
+        rest = p;
+    }
+
+    @Override
+    public boolean test(int c) {
+        if (c >>> 7 == 0) return ((c < 64 ? low : high) >>> c & 1) != 0;
+        return rest.test(c);
+    }
+}
@@ -0,0 +1,27 @@
+package easyIO;
+
+/**
+ * A test of a character, given as a code point. The common classes of characters
+ * are provided as constants that answer for ASCII characters from a table.
+ * @see BacktrackScanner#skipWhile(CharPredicate)
+ */
+@FunctionalInterface
+public interface CharPredicate {
+    boolean test(int c);
+
+    /** Whitespace, as defined by {@code Character.isWhitespace}. */
+    CharPredicate WHITESPACE = tabulated(Character::isWhitespace);
+    /** Digits, as defined by {@code Character.isDigit}. */
+    CharPredicate DIGIT = tabulated(Character::isDigit);
+    /** Characters that can start an identifier: letters and '_'. */
+    CharPredicate IDENTIFIER_START = tabulated(c -> Character.isAlphabetic(c) || c == '_');
+    /** Characters that can continue an identifier: letters, digits and '_'. */
+    CharPredicate IDENTIFIER_PART =
+        tabulated(c -> Character.isAlphabetic(c) || Character.isDigit(c) || c == '_');
+
+    /** A predicate equivalent to p that answers for ASCII characters from a
+     *  precomputed table, and asks p only about other characters. */
+    static CharPredicate tabulated(CharPredicate p) {
+        return new CharClass(p);
+    }
+}
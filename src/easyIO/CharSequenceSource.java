@@ -0,0 +1,101 @@
+package easyIO;
+
+import easyIO.BacktrackScanner.CodePointSource;
+
+import java.nio.CharBuffer;
+
+/**
+ * A source of input for the scanner whose input is an existing {@code CharSequence},
+ * such as a {@code String}, {@code StringBuilder} or {@code CharBuffer}, or a range of
+ * a {@code char[]}. Characters are copied straight from the sequence into the
+ * scanner's buffer, with no {@code Reader} or intermediate buffering in between,
+ * and the scanner sizes its buffer to fit short sequences in one step. Latin-1
+ * characters go straight into the scanner's compact byte buffer too; only the chunk
+ * holding the first character beyond Latin-1 is staged through an array of code
+ * points, as the buffer widens to hold it.
+ */
+public class CharSequenceSource extends CodePointSource {
+    private final String name;
+    private final CharSequence text;
+    /** The index of the next char to deliver. */
+    private int next;
+    private final int end;
+
+    /** Create a source named n whose input is the characters of s. */
+    public CharSequenceSource(CharSequence s, String n) {
+        name = n;
+        text = s;
+        next = 0;
+        end = s.length();
+    }
+
+    /** Create a source named n whose input is the len characters of a starting at
+     *  index off. The array is not copied, so it should not change while it is read. */
+    public CharSequenceSource(char[] a, int off, int len, String n) {
+        this(CharBuffer.wrap(a, off, len), n);
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    protected int available() {
+        return end - next;
+    }
+
+    @Override
+    protected int decodeNext() {
+        if (next == end) return -1;
+        char c = text.charAt(next++);
+        if (Character.isHighSurrogate(c) && next < end) {
+            char d = text.charAt(next);
+            if (Character.isLowSurrogate(d)) {
+                next++;
+                return Character.toCodePoint(c, d);
+            }
+        }
+        return c;
+    }
+
+    @Override
+    protected int decode(int[] dst, int off, int len) {
+        if (next == end) return -1;
+        CharSequence t = text;
+        int i = next, n = 0;
+        while (n < len && i < end) {
+            char c = t.charAt(i++);
+            if (Character.isHighSurrogate(c) && i < end) {
+                char d = t.charAt(i);
+                if (Character.isLowSurrogate(d)) {
+                    i++;
+                    dst[off + n++] = Character.toCodePoint(c, d);
+                    continue;
+                }
+            }
+            dst[off + n++] = c;
+        }
+        next = i;
+        return n;
+    }
+
+    @Override
+    protected int decodeLatin1(byte[] dst, int off, int len) {
+        if (next == end) return -1;
+        CharSequence t = text;
+        int i = next, n = 0;
+        while (n < len && i < end) {
+            char c = t.charAt(i);
+            if (c >= 256) break;
+            dst[off + n++] = (byte) c;
+            i++;
+        }
+        next = i;
+        return n;
+    }
+
+    @Override
+    public void close() {
+    }
+}
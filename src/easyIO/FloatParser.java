@@ -0,0 +1,163 @@
+package easyIO;
+
+import java.math.BigInteger;
+
+/**
+ * Conversion of a decimal number w * 10^q, where w is an integer of at most 19
+ * digits, to the nearest {@code double} or {@code float}, without going through a
+ * string. Small cases are computed exactly with one floating-point operation
+ * (Clinger's fast path); the rest use the Eisel-Lemire algorithm, which multiplies w
+ * by a 128-bit approximation of 5^q and can tell from the result whether it has
+ * enough precision to round correctly. When it cannot, or when the result would be
+ * subnormal, NaN is returned and the caller should fall back to the JDK parser.
+ *
+ * See D. Lemire, "Number Parsing at a Gigabyte per Second", Software: Practice and
+ * Experience 51(8), 2021.
+ */
+class FloatParser {
+    private static final int MIN_POWER = -342, MAX_POWER = 308;
+
+    /** The 128-bit approximations of 5^q for q in [MIN_POWER, MAX_POWER], normalized
+     *  so that the top bit is set: high word at 2(q - MIN_POWER), low word after it. */
+    private static final long[] POWERS_OF_FIVE = powersOfFive();
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final float[] FLOAT_POWERS_OF_TEN = {
+        1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+    };
+
+    private static long[] powersOfFive() {
+        long[] table = new long[2 * (MAX_POWER - MIN_POWER + 1)];
+        BigInteger two128 = BigInteger.ONE.shiftLeft(128);
+        for (int q = MIN_POWER; q <= MAX_POWER; q++) {
+            BigInteger c;
+            if (q < 0) {
+                // The reciprocal, rounded up, so that it is never an underestimate.
+                BigInteger p = BigInteger.valueOf(5).pow(-q);
+                int z = p.bitLength();
+                int b = (q >= -27) ? z + 127 : 2 * z + 128;
+                c = BigInteger.ONE.shiftLeft(b).divide(p).add(BigInteger.ONE);
+                while (c.compareTo(two128) >= 0) c = c.shiftRight(1);
+            } else {
+                // Truncated to its top 128 bits.
+                c = BigInteger.valueOf(5).pow(q);
+                int shift = 128 - c.bitLength();
+                c = (shift >= 0) ? c.shiftLeft(shift) : c.shiftRight(-shift);
+            }
+            int i = 2 * (q - MIN_POWER);
+            table[i] = c.shiftRight(64).longValue();
+            table[i + 1] = c.longValue();
+        }
+        return table;
+    }
+
+    /** The value of s as given by {@code Double.parseDouble}. Plain decimal constants
+     *  of up to 19 significant digits are converted without building a string. */
+    static double parseDouble(CharSequence s) {
+        int n = s.length(), i = 0;
+        boolean negative = false;
+        if (i < n && (s.charAt(i) == '-' || s.charAt(i) == '+')) negative = (s.charAt(i++) == '-');
+        long w = 0;
+        int digits = 0, q = 0;
+        boolean any = false, fraction = false;
+        for (; i < n; i++) {
+            char c = s.charAt(i);
+            int d = c - '0';
+            if (d >= 0 && d <= 9) {
+                any = true;
+                if (digits == 19) return Double.parseDouble(s.toString());
+                w = w * 10 + d;
+                if (w != 0) digits++;
+                if (fraction) q--;
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (i < n && any && (s.charAt(i) == 'e' || s.charAt(i) == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < n && (s.charAt(i) == '-' || s.charAt(i) == '+')) negativeExponent = (s.charAt(i++) == '-');
+            int e = 0, start = i;
+            for (; i < n && s.charAt(i) >= '0' && s.charAt(i) <= '9'; i++) {
+                if (e < 100000) e = e * 10 + (s.charAt(i) - '0');
+            }
+            if (i == start) return Double.parseDouble(s.toString());
+            q += negativeExponent ? -e : e;
+        }
+        if (!any || i < n) return Double.parseDouble(s.toString());
+        double r = (w == 0) ? 0 : toDouble(w, q);
+        if (Double.isNaN(r)) return Double.parseDouble(s.toString());
+        return negative ? -r : r;
+    }
+
+    /** The nearest double to w * 10^q, or NaN if it cannot be computed cheaply.
+     *  Requires: w != 0, treated as unsigned. */
+    static double toDouble(long w, int q) {
+        if (w >= 0 && w <= 1L << 53 && q >= -22 && q <= 22) {
+            return q >= 0 ? w * POWERS_OF_TEN[q] : w / POWERS_OF_TEN[-q];
+        }
+        long bits = eiselLemire(w, q, 52, -1023, 0x7FF, -4, 23);
+        return bits < 0 ? Double.NaN : Double.longBitsToDouble(bits);
+    }
+
+    /** The nearest float to w * 10^q, or NaN if it cannot be computed cheaply.
+     *  Requires: w != 0, treated as unsigned. */
+    static float toFloat(long w, int q) {
+        if (w >= 0 && w <= 1L << 24 && q >= -10 && q <= 10) {
+            return q >= 0 ? w * FLOAT_POWERS_OF_TEN[q] : w / FLOAT_POWERS_OF_TEN[-q];
+        }
+        long bits = eiselLemire(w, q, 23, -127, 0xFF, -17, 10);
+        return bits < 0 ? Float.NaN : Float.intBitsToFloat((int) bits);
+    }
+
+    /**
+     * The bits of the binary floating-point number nearest w * 10^q, for a format
+     * with the given number of explicit mantissa bits, minimum exponent and infinite
+     * biased exponent, or -1 if this method cannot decide it. The range of q in which
+     * exact halfway cases can occur is [minRoundEven, maxRoundEven].
+     */
+    private static long eiselLemire(long w, int q, int mantissaBits, int minExponent,
+                                    int infinitePower, int minRoundEven, int maxRoundEven) {
+        if (q < MIN_POWER || q > MAX_POWER) return -1;
+        int lz = Long.numberOfLeadingZeros(w);
+        w <<= lz;
+        int i = 2 * (q - MIN_POWER);
+        long high = unsignedMultiplyHigh(w, POWERS_OF_FIVE[i]);
+        long low = w * POWERS_OF_FIVE[i];
+        long precisionMask = -1L >>> (mantissaBits + 3);
+        if ((high & precisionMask) == precisionMask) {
+            long secondHigh = unsignedMultiplyHigh(w, POWERS_OF_FIVE[i + 1]);
+            low += secondHigh;
+            if (Long.compareUnsigned(secondHigh, low) > 0) high++;
+        }
+        if (low == -1L && (q < -27 || q > 55)) return -1;
+        int upperBit = (int) (high >>> 63);
+        int shift = upperBit + 64 - mantissaBits - 3;
+        long mantissa = high >>> shift;
+        int power2 = (int) (((152170L + 65536) * q >> 16) + 63) + upperBit - lz - minExponent;
+        if (power2 <= 0) return -1; // subnormal
+        if (Long.compareUnsigned(low, 1) <= 0 && q >= minRoundEven && q <= maxRoundEven
+                && (mantissa & 3) == 1 && (mantissa << shift) == high) {
+            mantissa &= ~1L; // exactly halfway: round to even
+        }
+        mantissa += mantissa & 1;
+        mantissa >>>= 1;
+        if (mantissa >= 2L << mantissaBits) {
+            mantissa = 1L << mantissaBits;
+            power2++;
+        }
+        mantissa &= ~(1L << mantissaBits);
+        if (power2 >= infinitePower) return (long) infinitePower << mantissaBits;
+        return mantissa | (long) power2 << mantissaBits;
+    }
+
+    private static long unsignedMultiplyHigh(long x, long y) {
+        return Math.multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+    }
+}
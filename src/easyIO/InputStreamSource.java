@@ -0,0 +1,102 @@
+package easyIO;
+
+import easyIO.BacktrackScanner.CodePointSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A source of input for the scanner that reads bytes from an {@code InputStream} a
+ * block at a time and decodes them directly into code points, without going through
+ * a {@code Reader}. The encoding may be UTF-8, ISO-8859-1 (Latin-1), or US-ASCII;
+ * for other charsets, use a {@code ReaderSource} over an {@code InputStreamReader}.
+ * Malformed input is replaced by U+FFFD exactly where an {@code InputStreamReader}
+ * for the same charset would replace it, however the stream splits up the bytes.
+ */
+public class InputStreamSource extends CodePointSource {
+    private static final int BLOCK_SIZE = 8192;
+    private enum Encoding { UTF_8, LATIN_1, ASCII }
+
+    private final String name;
+    private final InputStream in;
+    private final Encoding encoding;
+    /** Bytes read but not yet decoded are those between the position and the limit. */
+    private final ByteBuffer bytes = ByteBuffer.allocate(BLOCK_SIZE).limit(0);
+    private boolean eof = false;
+    private final int[] single = new int[1];
+
+    /** Create a source named n whose input comes from in, encoded as UTF-8. */
+    public InputStreamSource(InputStream in, String n) {
+        this(in, n, StandardCharsets.UTF_8);
+    }
+
+    /** Create a source named n whose input comes from in, encoded in charset cs.
+     *  @throws IllegalArgumentException if cs is not UTF-8, ISO-8859-1 or US-ASCII.
+     */
+    public InputStreamSource(InputStream in, String n, Charset cs) {
+        if (cs.equals(StandardCharsets.UTF_8)) encoding = Encoding.UTF_8;
+        else if (cs.equals(StandardCharsets.ISO_8859_1)) encoding = Encoding.LATIN_1;
+        else if (cs.equals(StandardCharsets.US_ASCII)) encoding = Encoding.ASCII;
+        else throw new IllegalArgumentException("Unsupported charset: " + cs);
+        name = n;
+        this.in = in;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    /** Read another block of bytes after any not yet decoded. */
+    private void refill() throws IOException {
+        bytes.compact();
+        byte[] b = bytes.array();
+        int n = in.read(b, bytes.position(), bytes.remaining());
+        if (n == -1) eof = true;
+        else bytes.position(bytes.position() + n);
+        bytes.flip();
+    }
+
+    @Override
+    protected int decodeNext() throws IOException {
+        int n = decode(single, 0, 1);
+        return n == -1 ? -1 : single[0];
+    }
+
+    @Override
+    protected int decode(int[] dst, int off, int len) throws IOException {
+        while (true) {
+            if (bytes.hasRemaining()) {
+                int n = switch (encoding) {
+                    case UTF_8 -> Utf8.decode(bytes, dst, off, len, eof);
+                    case LATIN_1 -> decodeSingleBytes(dst, off, len, 0xFF);
+                    case ASCII -> decodeSingleBytes(dst, off, len, 0x7F);
+                };
+                if (n > 0) return n;
+            }
+            if (eof) return -1;
+            refill();
+        }
+    }
+
+    /** Decode a run of single-byte characters, where bytes above max are malformed. */
+    private int decodeSingleBytes(int[] dst, int off, int len, int max) {
+        byte[] b = bytes.array();
+        int p = bytes.position();
+        int n = Math.min(len, bytes.remaining());
+        for (int i = 0; i < n; i++) {
+            int c = b[p + i] & 0xFF;
+            dst[off + i] = (c <= max) ? c : Utf8.REPLACEMENT;
+        }
+        bytes.position(p + n);
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,65 @@
+package easyIO;
+
+import java.util.Arrays;
+
+/**
+ * The offsets at which newline characters occur in an input source, from which the
+ * line and column of any code point can be reconstructed. Offsets count code points
+ * from the start of the source. A newline is reported at column 0 of the line it
+ * starts; other characters are numbered from column 1.
+ *
+ * Entries for offsets the scanner can no longer ask about may be discarded, so the
+ * index stays proportional to the number of lines in the scanner's window rather than
+ * in the whole input.
+ */
+class LineIndex {
+    /** Offsets of the newlines still in the index, in increasing order. */
+    private long[] newlines = {};
+    private int n = 0;
+    /** The number of newlines discarded from the front of the index. */
+    private int discarded = 0;
+
+    /** Record a newline at offset off, which is beyond any recorded so far. */
+    void add(long off) {
+        if (n == newlines.length) newlines = Arrays.copyOf(newlines, Math.max(n * 2, 16));
+        newlines[n++] = off;
+    }
+
+    /** The number of recorded newlines at offsets up to and including off,
+     *  not counting discarded ones. */
+    private int count(long off) {
+        if (n == 0 || newlines[n - 1] <= off) return n;
+        int lo = 0, hi = n - 1; // answer is in [lo, hi]
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (newlines[mid] <= off) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /** The line number of the code point at offset off. Line numbers start from 1. */
+    int lineOf(long off) {
+        return discarded + count(off) + 1;
+    }
+
+    /** The column number of the code point at offset off. */
+    int columnOf(long off) {
+        int i = count(off);
+        if (i == 0) {
+            if (discarded == 0) return (int) (off + 1);
+            throw new IllegalArgumentException("offset " + off + " is no longer indexed");
+        }
+        return (int) (off - newlines[i - 1]);
+    }
+
+    /** Forget about offsets before off. The newline governing the line that contains
+     *  off is kept, so positions at and after off remain answerable. */
+    void discardBefore(long off) {
+        int i = count(off - 1) - 1;
+        if (i <= 0) return;
+        System.arraycopy(newlines, i, newlines, 0, n - i);
+        n -= i;
+        discarded += i;
+    }
+}
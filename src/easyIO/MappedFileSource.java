@@ -0,0 +1,92 @@
+package easyIO;
+
+import easyIO.BacktrackScanner.CodePointSource;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A source of input for the scanner that decodes a UTF-8 file directly from a
+ * memory mapping of it, avoiding the copying done by a {@code Reader}. Files of any
+ * size are supported: the file is mapped one window at a time, and the window is
+ * moved forward as input is consumed.
+ */
+public class MappedFileSource extends CodePointSource {
+    /** The default size of the part of the file mapped at once. */
+    private static final long WINDOW_SIZE = 1L << 27;
+
+    private final String name;
+    private final long windowSize;
+    private final FileChannel channel;
+    private final long size;
+    /** The part of the file currently mapped, starting at file offset windowStart. */
+    private MappedByteBuffer window;
+    private long windowStart;
+    private final int[] single = new int[1];
+
+    /** Create a source named by the path, whose input is the file at path. */
+    public MappedFileSource(Path path) throws IOException {
+        this(path, path.toString());
+    }
+
+    /** Create a source named n, whose input is the file at path. */
+    public MappedFileSource(Path path, String n) throws IOException {
+        this(path, n, WINDOW_SIZE);
+    }
+
+    /** Create a source named n, whose input is the file at path, mapped windowSize
+     *  bytes at a time. */
+    MappedFileSource(Path path, String n, long windowSize) throws IOException {
+        assert windowSize >= 4; // room for any UTF-8 sequence
+        name = n;
+        this.windowSize = windowSize;
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            size = channel.size();
+            map(0);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Map the window of the file starting at file offset start. */
+    private void map(long start) throws IOException {
+        windowStart = start;
+        window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(windowSize, size - start));
+    }
+
+    /** Whether the current window extends to the end of the file. */
+    private boolean lastWindow() {
+        return windowStart + window.limit() == size;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    @Override
+    protected int decodeNext() throws IOException {
+        int n = decode(single, 0, 1);
+        return n == -1 ? -1 : single[0];
+    }
+
+    @Override
+    protected int decode(int[] dst, int off, int len) throws IOException {
+        while (true) {
+            int n = Utf8.decode(window, dst, off, len, lastWindow());
+            if (n > 0) return n;
+            if (lastWindow()) return -1;
+            map(windowStart + window.position());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
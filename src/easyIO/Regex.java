@@ -89,6 +89,10 @@ public class Regex {
      * the input if it is not found.
 	 */
 	public static void advanceToPattern(BacktrackScanner sc, Recognizer r) {
+		if (r instanceof AnyChar a) {
+			sc.skipUntilAny(a.chars);
+			return;
+		}
 		while (sc.hasNext() && !hasPattern(sc, r))
 			sc.advance();
 	}	
@@ -201,15 +205,26 @@ public class Regex {
 	
 	/** Recognizer that matches any single character in the string {@code c} */
 	public static Recognizer anyChar(final String c) {
-		return new Recognizer() {
-			@Override
-			public void recognize(BacktrackScanner s, Continuation k) throws Success {
-				if (c.indexOf(s.peek()) != -1) {
-					s.advance();
-					k.check();
-				}
+		return new AnyChar(c);
+	}
+
+	/** Recognizes any single character in chars. Searching for one, as
+	 *  advanceToPattern and parseToDelimiter do, is done by the scanner. */
+	private static class AnyChar implements Recognizer {
+		final String chars;
+
+		AnyChar(String chars) {
+			this.chars = chars;
+		}
+
+		@Override
+		public void recognize(BacktrackScanner s, Continuation k) throws Success {
+			int c = s.peek();
+			if (c != -1 && chars.indexOf(c) != -1) {
+				s.advance();
+				k.check();
 			}
-		};
+		}
 	}
 	
 	/** Recognizer that matches any single character <em>not</em> in the string {@code c}. */
@@ -0,0 +1,153 @@
+package easyIO;
+
+import easyIO.BacktrackScanner.CodePointSource;
+import easyIO.BacktrackScanner.Location;
+import easyIO.BacktrackScanner.Source;
+
+import java.util.Arrays;
+
+/**
+ * Records where a sequence of buffered characters came from, as a table of runs. The
+ * characters from position {@code start[i]} up to the start of the next run were read
+ * consecutively from {@code source[i]}. If that is a {@code CodePointSource}, the first
+ * of them is at offset {@code offset[i]} within it, and positions are reconstructed
+ * from its line index. Otherwise {@code offset[i]} is -1 and the first character is at
+ * line {@code line[i]}, column {@code column[i]}, with the rest following on the same
+ * line.
+ *
+ * A table with no runs describes no characters; otherwise the first run starts at
+ * position 0.
+ */
+class RunTable {
+    private static final int INITIAL_SIZE = 4;
+    // Allocated on the first run, since many tables only ever describe one source.
+    private int[] start = {};
+    private Source[] source = {};
+    private long[] offset = {};
+    private int[] line = {};
+    private int[] column = {};
+    private int n = 0;
+
+    private void add(int s, Source src, long off, int ln, int col) {
+        if (n == start.length) {
+            int m = Math.max(n * 2, INITIAL_SIZE);
+            start = Arrays.copyOf(start, m);
+            source = Arrays.copyOf(source, m);
+            offset = Arrays.copyOf(offset, m);
+            line = Arrays.copyOf(line, m);
+            column = Arrays.copyOf(column, m);
+        }
+        start[n] = s;
+        source[n] = src;
+        offset[n] = off;
+        line[n] = ln;
+        column[n] = col;
+        n++;
+    }
+
+    /** Record that the character at position p, the last one so far, came from offset
+     *  off of src. */
+    void addIndexed(int p, CodePointSource src, long off) {
+        if (n > 0) {
+            int r = n - 1;
+            if (source[r] == src && offset[r] >= 0 && offset[r] + (p - start[r]) == off) return;
+        }
+        add(p, src, off, 0, 0);
+    }
+
+    /** Record that the character at position p, the last one so far, is at loc. */
+    void addLocation(int p, Location loc) {
+        addLocation(p, loc.input, loc.lineNumber, loc.column);
+    }
+
+    private void addLocation(int p, Source src, int ln, int col) {
+        if (n > 0) {
+            int r = n - 1;
+            if (source[r] == src && offset[r] < 0 && line[r] == ln
+                    && column[r] + (p - start[r]) == col) return;
+        }
+        add(p, src, -1, ln, col);
+    }
+
+    /** The run containing position p. Requires: p is described by the table. */
+    private int find(int p) {
+        int lo = 0, hi = n - 1; // answer is in [lo, hi]
+        if (start[hi] <= p) return hi;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (start[mid] <= p) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    /** The source of the character at position p. */
+    Source sourceAt(int p) {
+        return source[find(p)];
+    }
+
+    /** The location of the character ch at position p. */
+    Location locationAt(int p, int ch) {
+        int r = find(p);
+        int k = p - start[r];
+        if (offset[r] >= 0) return ((CodePointSource) source[r]).location(offset[r] + k, ch);
+        return new Location(source[r], line[r], column[r] + k, ch);
+    }
+
+    /** Forget all positions at or after p. */
+    void truncate(int p) {
+        while (n > 0 && start[n - 1] >= p) source[--n] = null;
+    }
+
+    /** Forget all positions before p, where end is the first position not described,
+     *  and renumber the rest so that p becomes position 0. */
+    void dropPrefix(int p, int end) {
+        if (p >= end) {
+            clear();
+            return;
+        }
+        if (p == 0) return;
+        int r = find(p);
+        int k = p - start[r];
+        if (offset[r] >= 0) offset[r] += k;
+        else column[r] += k;
+        System.arraycopy(start, r, start, 0, n - r);
+        System.arraycopy(source, r, source, 0, n - r);
+        System.arraycopy(offset, r, offset, 0, n - r);
+        System.arraycopy(line, r, line, 0, n - r);
+        System.arraycopy(column, r, column, 0, n - r);
+        Arrays.fill(source, n - r, n, null);
+        n -= r;
+        start[0] = p;
+        for (int i = 0; i < n; i++) start[i] -= p;
+        if (offset[0] >= 0) ((CodePointSource) source[0]).discardBefore(offset[0]);
+    }
+
+    /** A new table describing positions from..to-1 of this one, renumbered from 0. */
+    RunTable slice(int from, int to) {
+        RunTable result = new RunTable();
+        result.appendRange(this, from, to, 0);
+        return result;
+    }
+
+    /** Append the runs describing positions from..to-1 of t, renumbered so that from
+     *  becomes position base of this table, the first position it does not describe.
+     *  A run that continues the last one here is merged into it. */
+    void appendRange(RunTable t, int from, int to, int base) {
+        if (from >= to) return;
+        for (int r = t.find(from); r < t.n && t.start[r] < to; r++) {
+            int s = Math.max(t.start[r], from);
+            int k = s - t.start[r];
+            if (t.offset[r] >= 0) {
+                addIndexed(s - from + base, (CodePointSource) t.source[r], t.offset[r] + k);
+            } else {
+                addLocation(s - from + base, t.source[r], t.line[r], t.column[r] + k);
+            }
+        }
+    }
+
+    void clear() {
+        Arrays.fill(source, 0, n, null);
+        n = 0;
+    }
+}
@@ -1,9 +1,22 @@
 package easyIO;
 
-import java.io.BufferedReader;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 /** A {@code BacktrackScanner} extended with convenience methods for
  * parsing common things like integers and identifiers.
@@ -18,6 +31,9 @@ import java.io.Reader;
  *  unchanged.
  */
 public class Scanner extends BacktrackScanner {
+
+	/** The table in which identifiers are interned, if any. */
+	private SymbolTable symbols;
 		
     /** Create a scanner that has no input source (yet). */
 	public Scanner() {
@@ -37,19 +53,45 @@ public class Scanner extends BacktrackScanner {
 		includeSource(r, name);
 	}
 	
+	/** Create a scanner that reads UTF-8 input from {@code in},
+	 *  calling the source {@code name}.
+	 *  @see easyIO.InputStreamSource
+	 */
+	public Scanner(InputStream in, String name) {
+		super(new InputStreamSource(in, name));
+	}
+
 	/** Create a scanner that reads from file named {@code filename}. To read
 	 *  directly from a string, use a {@code StringReader}.
 	 *  @see java.io.StringReader
 	 */
 	public Scanner(String filename) throws FileNotFoundException {
-		super();
-		includeSource(new BufferedReader(new FileReader(filename)), filename);
+		super(fileSource(Path.of(filename), filename));
+	}
+
+	/** Create a scanner that reads from the file at {@code path}. */
+	public Scanner(Path path) throws FileNotFoundException {
+		super(fileSource(path, path.toString()));
+	}
+
+	/** A source named {@code name} for the file at {@code path}. A regular file
+	 *  whose contents are in the default charset, UTF-8, is decoded directly from
+	 *  a memory mapping of it; anything else is read through a {@code FileReader}.
+	 */
+	private static Source fileSource(Path path, String name) throws FileNotFoundException {
+		if (Files.isRegularFile(path) && Charset.defaultCharset().equals(StandardCharsets.UTF_8)) {
+			try {
+				return new MappedFileSource(path, name);
+			} catch (IOException e) {
+				// fall back to reading it
+			}
+		}
+		return new ReaderSource(new FileReader(path.toFile()), name);
 	}
 
 	/** Scan past any whitespace. */
 	public void whitespace() {
-		while (hasNext() && Character.isWhitespace(peek()))
-			advance();
+		skipWhile(CharPredicate.WHITESPACE);
 	}
 
     /** Scan past the specified string. 
@@ -78,15 +120,7 @@ public class Scanner extends BacktrackScanner {
 
 	/** Scan past all digits at the current posn, if any. */
 	public void optDigits() {
-		try {
-			while (true) {
-				if (!hasNext() || !Character.isDigit(peek())) { break; }
-				nextDigit();
-			}
-		} catch (UnexpectedInput e) {
-				assert false;
-			}
-		
+		skipWhile(CharPredicate.DIGIT);
 	}
 
 	/** Scan past an integer constant. 
@@ -95,17 +129,21 @@ public class Scanner extends BacktrackScanner {
 	 *             integer literal.
 	 */
 	public void integer() throws UnexpectedInput {
-		try {
-			mark();
-			if (peek() == '-') { advance(); }
-			nextDigit();
-			optDigits();
-			accept();
-			return;
-		} catch (UnexpectedInput uinp) {
+		if (!tryInteger()) throw uinp;
+	}
+
+	/** Scan past an integer constant, if there is one, and return whether there
+	 *  was. If not, the current position is left unchanged. */
+	public boolean tryInteger() {
+		mark();
+		if (lookahead() == '-') step();
+		if (!CharPredicate.DIGIT.test(lookahead())) {
 			abort();
-			throw uinp;
+			return false;
 		}
+		skipWhile(CharPredicate.DIGIT);
+		accept();
+		return true;
 	}
 
 	/**
@@ -170,13 +208,15 @@ public class Scanner extends BacktrackScanner {
 	/** Scan an identifier ala Java.
         @throws UnexpectedInput if the next characters are not an identifier. */
 	public void identifier() throws UnexpectedInput {
-		int first = peek();
-		if (!Character.isAlphabetic(first) && first != '_')
-			throw uinp;
-		advance();
-		while (Character.isAlphabetic(peek()) || Character.isDigit(peek()) || peek() == '_') {
-			advance();
-		}
+		if (!skipIdentifier()) throw uinp;
+	}
+
+	/** Scan past an identifier, if there is one, and return whether there was. */
+	private boolean skipIdentifier() {
+		if (!CharPredicate.IDENTIFIER_START.test(lookahead())) return false;
+		step();
+		skipWhile(CharPredicate.IDENTIFIER_PART);
+		return true;
 	}
 
 	/**
@@ -185,45 +225,330 @@ public class Scanner extends BacktrackScanner {
 	 * @throws UnexpectedInput
 	 *             if the characters following the current position are not an integer
 	 *             literal.
+	 * @throws NumberFormatException
+	 *             if the literal is out of the range of an {@code int}. The
+	 *             current position is left unchanged.
 	 */
 	public int nextInt() throws UnexpectedInput {
-		mark();
-		try {
-			integer();
-			int r = Integer.parseInt(getToken());
-			accept();
-			return r;
-		} catch (UnexpectedInput e) {
+		return (int) scanInteger(true, Integer.MIN_VALUE, Integer.MAX_VALUE);
+	}
+
+	/** Scan past an integer constant and return its value as a {@code long}.
+	 *  @see #nextInt() */
+	public long nextLong() throws UnexpectedInput {
+		return scanInteger(true, Long.MIN_VALUE, Long.MAX_VALUE);
+	}
+
+	/** Scan past an integer constant and return its value as a {@code short}.
+	 *  @see #nextInt() */
+	public short nextShort() throws UnexpectedInput {
+		return (short) scanInteger(true, Short.MIN_VALUE, Short.MAX_VALUE);
+	}
+
+	/** Scan past an unsigned integer constant, which may not start with a minus
+	 *  sign, and return it as an {@code int} holding a value from 0 to 2<sup>32</sup>-1,
+	 *  as {@code Integer.parseUnsignedInt} does.
+	 *  @see #nextInt() */
+	public int nextUnsignedInt() throws UnexpectedInput {
+		return (int) scanInteger(false, 0, 0xFFFFFFFFL);
+	}
+
+	/** Scan past an unsigned integer constant, which may not start with a minus
+	 *  sign, and return it as a {@code long} holding a value from 0 to 2<sup>64</sup>-1,
+	 *  as {@code Long.parseUnsignedLong} does.
+	 *  @see #nextInt() */
+	public long nextUnsignedLong() throws UnexpectedInput {
+		return scanInteger(false, 0, -1L);
+	}
+
+	/** Scan past an integer constant in the range of an {@code int}, if there is
+	 *  one, making its value available from {@code intValue()}. This is
+	 *  {@code nextInt()} without exceptions: return whether there was one, and if
+	 *  not, leave the current position unchanged. */
+	public boolean tryInt() {
+		return parseInteger(true, Integer.MIN_VALUE, Integer.MAX_VALUE) == PARSED;
+	}
+
+	/** Scan past an integer constant in the range of a {@code long}, if there is
+	 *  one, making its value available from {@code longValue()}.
+	 *  @see #tryInt() */
+	public boolean tryLong() {
+		return parseInteger(true, Long.MIN_VALUE, Long.MAX_VALUE) == PARSED;
+	}
+
+	/** Scan past a floating-point constant, if there is one, making its value
+	 *  available from {@code doubleValue()}.
+	 *  @see #tryInt() */
+	public boolean tryDouble() {
+		return parseFloatingPoint(false);
+	}
+
+	/** The value scanned by the last successful {@code tryInt()}. */
+	public int intValue() {
+		return (int) integerValue;
+	}
+
+	/** The value scanned by the last successful {@code tryLong()} or {@code tryInt()}. */
+	public long longValue() {
+		return integerValue;
+	}
+
+	/** The value scanned by the last successful {@code tryDouble()}. */
+	public double doubleValue() {
+		return floatingValue;
+	}
+
+	/** The value of c as a decimal digit, or -1 if it is not one. */
+	static int digitValue(int c) {
+		int d = c - '0';
+		if (d >= 0 && d <= 9) return d;
+		return c < 128 ? -1 : Character.digit(c, 10);
+	}
+
+	/** Outcomes of parseInteger and parseFloatingPoint. */
+	private static final int PARSED = 0, NOT_A_NUMBER = 1, OUT_OF_RANGE = 2;
+
+	/** The value found by the last successful parseInteger. */
+	private long integerValue;
+	/** The value found by the last successful parseFloatingPoint. */
+	private double floatingValue;
+
+	/** Scan past an integer literal and return its value.
+	 *  @see #parseInteger(boolean, long, long) */
+	private long scanInteger(boolean signed, long min, long max) throws UnexpectedInput {
+		switch (parseInteger(signed, min, max)) {
+		case PARSED:
+			return integerValue;
+		case OUT_OF_RANGE:
+			mark();
+			if (lookahead() == '-') step();
+			while (digitValue(lookahead()) >= 0) step();
+			String token = getToken();
 			abort();
-			throw e;
-		} catch (NumberFormatException e) {
+			throw new NumberFormatException("Value out of range: " + token);
+		default:
+			throw uinp;
+		}
+	}
+
+	/**
+	 * Scan past an integer literal: a minus sign, if signed, followed by one or
+	 * more digits. Its value is accumulated from the buffer as the digits are
+	 * scanned, without building a string. The magnitude is held as an unsigned
+	 * long, so that it can reach -min for a negative literal, or max otherwise,
+	 * with max compared unsigned. On success, the value is left in integerValue.
+	 * Otherwise, the current position is left unchanged.
+	 * @return PARSED, NOT_A_NUMBER or OUT_OF_RANGE.
+	 */
+	private int parseInteger(boolean signed, long min, long max) {
+		mark();
+		boolean negative = signed && lookahead() == '-';
+		if (negative) step();
+		int d = digitValue(lookahead());
+		if (d < 0) {
 			abort();
-			throw e;
+			return NOT_A_NUMBER;
 		}
+		long bound = negative ? -min : max;
+		long q = Long.divideUnsigned(bound, 10);
+		int r = (int) Long.remainderUnsigned(bound, 10);
+		long m = 0;
+		do {
+			step();
+			if (Long.compareUnsigned(m, q) > 0 || (m == q && d > r)) {
+				abort();
+				return OUT_OF_RANGE;
+			}
+			m = m * 10 + d;
+			d = digitValue(lookahead());
+		} while (d >= 0);
+		accept();
+		integerValue = negative ? -m : m;
+		return PARSED;
 	}
 
 	/**
      * Scan past a floating-point constant and return its value as a
-     * {@code double}
+     * {@code double}, correctly rounded. The constant is an optional minus
+     * sign, digits with an optional decimal point among or around them, and
+     * an optional exponent: 'e' or 'E', an optional sign, and digits. An 'e'
+     * not followed by an exponent is not part of the constant.
 	 * 
 	 * @throws UnexpectedInput
      *             if the characters following the current position are not a
      *             legal representation of a double literal.
 	 */
 	public double nextDouble() throws UnexpectedInput {
+		if (!tryDouble()) throw uinp;
+		return floatingValue;
+	}
+
+	/** Scan past a floating-point constant and return its value as a
+	 *  {@code float}, correctly rounded.
+	 *  @see #nextDouble() */
+	public float nextFloat() throws UnexpectedInput {
+		if (!parseFloatingPoint(true)) throw uinp;
+		return (float) floatingValue;
+	}
+
+	/**
+	 * Scan past a floating-point constant, building its value as w * 10^q while
+	 * scanning, where w holds up to 19 significant digits. The conversion to binary
+	 * is done by {@code FloatParser}; only the rare cases it cannot decide, or
+	 * constants with more significant digits, are handed to the JDK as a string.
+	 * The value, the nearest float if single is true, else the nearest double, is
+	 * left in floatingValue. Return whether there was a constant to scan; if not,
+	 * the current position is left unchanged.
+	 */
+	private boolean parseFloatingPoint(boolean single) {
 		mark();
-		try {
-			floatingPoint();
-			double r = Double.parseDouble(getToken());
-			accept();
-			return r;
-		} catch (UnexpectedInput e) {
-			abort();
-			throw e;
-		} catch (NumberFormatException e) {
+		boolean negative = lookahead() == '-';
+		if (negative) step();
+		long w = 0;
+		int digits = 0, q = 0;
+		boolean any = false, fraction = false, truncated = false;
+		int c = lookahead();
+		while (true) {
+			int d = c - '0';
+			if (d >= 0 && d <= 9) {
+				any = true;
+				if (digits < 19) {
+					w = w * 10 + d;
+					if (w != 0) digits++;
+					if (fraction) q--;
+				} else {
+					truncated |= (d != 0);
+					if (!fraction) q++;
+				}
+			} else if (c == '.' && !fraction) {
+				fraction = true;
+			} else {
+				break;
+			}
+			step();
+			c = lookahead();
+		}
+		if (!any) {
 			abort();
-			throw e;
+			return false;
+		}
+		if (c == 'e' || c == 'E') {
+			mark();
+			step();
+			c = lookahead();
+			boolean negativeExponent = (c == '-');
+			if (c == '-' || c == '+') {
+				step();
+				c = lookahead();
+			}
+			int d = c - '0';
+			if (d >= 0 && d <= 9) {
+				int e = 0;
+				do {
+					if (e < 100000) e = e * 10 + d; // beyond any finite nonzero value
+					step();
+					d = lookahead() - '0';
+				} while (d >= 0 && d <= 9);
+				q += negativeExponent ? -e : e;
+				accept();
+			} else {
+				abort();
+			}
+		}
+		double r = 0;
+		if (w != 0) {
+			r = truncated ? Double.NaN
+			  : single ? FloatParser.toFloat(w, q) : FloatParser.toDouble(w, q);
+			if (Double.isNaN(r)) {
+				String token = getToken();
+				accept();
+				floatingValue = single ? Float.parseFloat(token) : Double.parseDouble(token);
+				return true;
+			}
+		}
+		accept();
+		floatingValue = negative ? -r : r;
+		return true;
+	}
+
+	/**
+	 * Read whitespace-separated integer constants into dst[off..off+len-1], stopping
+	 * early at anything that is not an integer constant in the range of an
+	 * {@code int}, or at the end of input. Whitespace is skipped before each constant.
+	 * @return the number of values stored. If it is less than len, the scanner is
+	 *   left just before whatever stopped it, which the caller can examine;
+	 *   {@code hasNext()} is false if it was the end of the input.
+	 */
+	public int readInts(int[] dst, int off, int len) {
+		Objects.checkFromIndexSize(off, len, dst.length);
+		int n = 0;
+		while (n < len) {
+			whitespace();
+			if (!tryInt()) break;
+			dst[off + n++] = (int) integerValue;
+		}
+		return n;
+	}
+
+	/** Read integer constants in the range of a {@code long} into
+	 *  dst[off..off+len-1]. @see #readInts(int[], int, int) */
+	public int readLongs(long[] dst, int off, int len) {
+		Objects.checkFromIndexSize(off, len, dst.length);
+		int n = 0;
+		while (n < len) {
+			whitespace();
+			if (!tryLong()) break;
+			dst[off + n++] = integerValue;
 		}
+		return n;
+	}
+
+	/** Read floating-point constants into dst[off..off+len-1].
+	 *  @see #readInts(int[], int, int) */
+	public int readDoubles(double[] dst, int off, int len) {
+		Objects.checkFromIndexSize(off, len, dst.length);
+		int n = 0;
+		while (n < len) {
+			whitespace();
+			if (!tryDouble()) break;
+			dst[off + n++] = floatingValue;
+		}
+		return n;
+	}
+
+	/**
+	 * A stream of the whitespace-separated integer constants ahead in the input.
+	 * It ends at anything that is not an integer constant in the range of an
+	 * {@code int}, or at the end of input, leaving the scanner just before it,
+	 * as {@code readInts} does. The stream reads from the scanner as it is
+	 * consumed, so the scanner should not otherwise be used meanwhile.
+	 */
+	public IntStream ints() {
+		return StreamSupport.intStream(new Spliterators.AbstractIntSpliterator(Long.MAX_VALUE,
+				Spliterator.ORDERED | Spliterator.NONNULL) {
+			@Override
+			public boolean tryAdvance(IntConsumer action) {
+				whitespace();
+				if (!tryInt()) return false;
+				action.accept((int) integerValue);
+				return true;
+			}
+		}, false);
+	}
+
+	/** A stream of the whitespace-separated floating-point constants ahead in
+	 *  the input. @see #ints() */
+	public DoubleStream doubles() {
+		return StreamSupport.doubleStream(new Spliterators.AbstractDoubleSpliterator(Long.MAX_VALUE,
+				Spliterator.ORDERED | Spliterator.NONNULL) {
+			@Override
+			public boolean tryAdvance(DoubleConsumer action) {
+				whitespace();
+				if (!tryDouble()) return false;
+				action.accept(floatingValue);
+				return true;
+			}
+		}, false);
 	}
 
 	/**
@@ -235,15 +560,8 @@ public class Scanner extends BacktrackScanner {
 	 */
 	public String nextLine() throws UnexpectedInput {
 		mark();
-		while (hasNext()) {
-			try {
-				int c = nextCodePoint();
-				if (c == '\n') break;
-			} catch (EOF e) {
-				assert false;
-				break;
-			}
-		}
+		skipUntil('\n');
+		if (lookahead() == '\n') step();
 		String ret = getToken();
 		accept();
 		return ret;
@@ -254,32 +572,80 @@ public class Scanner extends BacktrackScanner {
 	 *             legal Java identifier.
 	 */
 	public String nextIdentifier() throws UnexpectedInput {
+		String r = tryIdentifier();
+		if (r == null) throw uinp;
+		return r;
+	}
+
+	/** Scan past and return an identifier, or return null, leaving the current
+	 *  position unchanged, if there is none. */
+	public String tryIdentifier() {
 		mark();
-		try {
-			identifier();
-			String r = getToken();
-			accept();
-			return r;
-		} catch (UnexpectedInput e) {
+		if (!skipIdentifier()) {
+			abort();
+			return null;
+		}
+		String r = (symbols != null) ? symbols.intern(tokenView()) : getToken();
+		accept();
+		return r;
+	}
+
+	/** Scan past an identifier and return its id in the symbol table, adding it
+	 *  to the table if necessary, or -1 if it is not there and the table is full.
+	 *  @throws UnexpectedInput
+	 *             if the characters at the current position are not a
+	 *             legal Java identifier.
+	 *  @throws IllegalStateException if there is no symbol table.
+	 */
+	public int nextSymbol() throws UnexpectedInput {
+		if (symbols == null) throw new IllegalStateException("no symbol table");
+		mark();
+		if (!skipIdentifier()) {
 			abort();
-			throw e;
+			throw uinp;
 		}
+		int r = symbols.id(tokenView());
+		accept();
+		return r;
+	}
+
+	/** Intern identifiers returned by {@code nextIdentifier()} in t, so that
+	 *  repeated identifiers are returned as the same string without allocating
+	 *  a new one. If t is null, identifiers are no longer interned. */
+	public void setSymbolTable(SymbolTable t) {
+		symbols = t;
+	}
+
+	/** The table in which identifiers are interned, or null if there is none. */
+	public SymbolTable symbolTable() {
+		return symbols;
 	}
 	/** Scan past a optional carriage return character and a newline character.
 	 * 
 	 * @throws UnexpectedInput if the next characters are neither "\r\n" nor "\n".
 	 */
 	public void newline() throws UnexpectedInput {
+		if (!tryNewline()) throw uinp;
+	}
+
+	/** Scan past an optional carriage return character and a newline character,
+	 *  if they are there, and return whether they were. */
+	public boolean tryNewline() {
+		int c = lookahead();
+		if (c == '\n') {
+			step();
+			return true;
+		}
+		if (c != '\r') return false;
 		mark();
-		if (peek() == '\r') advance();
-		if (peek() == '\n') {
-			advance();
+		step();
+		if (lookahead() == '\n') {
+			step();
 			accept();
-			return;
-		} else {
-			abort();
-			throw uinp;
+			return true;
 		}
+		abort();
+		return false;
 	}
 
 	/**
@@ -287,14 +653,8 @@ public class Scanner extends BacktrackScanner {
 	 * is first.
 	 */
 	public void eol() {
-		while (true) {
-			try {
-				int c = nextCodePoint();
-				if (c == '\n') return;
-			} catch (EOF e) {
-				return;
-			}
-		}
+		skipUntil('\n');
+		if (lookahead() == '\n') step();
 	}
 	
 	/**
@@ -302,17 +662,11 @@ public class Scanner extends BacktrackScanner {
 	 * or the next non-whitespace character.
 	 */
 	public void trailingWhitespace() {
-		while (true) {
-			int c = peek();
-			switch (c) {
-			 case -1:
-			 case '\n':
-			 case '\f': // treat form feed like newline
-				return;
-			}
-			if (!Character.isWhitespace(c)) return;
-			advance();
-		}
+		skipWhile(TRAILING_WHITESPACE);
 	}
 
+	/** Whitespace other than newlines, treating form feed like a newline. */
+	private static final CharPredicate TRAILING_WHITESPACE = CharPredicate.tabulated(
+		c -> c != '\n' && c != '\f' && Character.isWhitespace(c));
+
 }
@@ -0,0 +1,127 @@
+package easyIO;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Off-heap storage for the part of a scanner's buffer that lies far behind the current
+ * position. Code points are appended to a temporary file, which is deleted when the
+ * store is closed, and read back a page at a time. Indices are relative to the first
+ * code point not yet discarded.
+ */
+class SpillStore {
+    private static final int PAGE_SIZE = 8192; // code points
+
+    private FileChannel file;
+    /** The file index of the code point at index 0. */
+    private long base = 0;
+    /** The number of code points in the file, counting discarded ones. */
+    private long size = 0;
+    private final ByteBuffer io = ByteBuffer.allocateDirect(PAGE_SIZE * 4);
+    /** A cache of the page of the file starting at file index pageStart. */
+    private final int[] page = new int[PAGE_SIZE];
+    private long pageStart = -1;
+    private int pageLength = 0;
+
+    private FileChannel file() throws IOException {
+        if (file == null) {
+            Path p = Files.createTempFile("easyIO", ".spill");
+            file = FileChannel.open(p, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+        }
+        return file;
+    }
+
+    /** Append cs[off..off+n-1]. */
+    void append(int[] cs, int off, int n) {
+        try {
+            FileChannel f = file();
+            while (n > 0) {
+                int k = Math.min(n, PAGE_SIZE);
+                io.clear();
+                io.asIntBuffer().put(cs, off, k);
+                io.limit(k * 4);
+                long at = size * 4;
+                while (io.hasRemaining()) at += f.write(io, at);
+                size += k;
+                off += k;
+                n -= k;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** The code point at index i. */
+    int get(int i) {
+        long fi = base + i;
+        if (fi < pageStart || fi >= pageStart + pageLength) load(fi);
+        return page[(int) (fi - pageStart)];
+    }
+
+    /** Copy the code points at indices from..to-1 to dst, starting at index off. */
+    void copyOut(int from, int to, int[] dst, int off) {
+        for (int i = from; i < to; ) {
+            long fi = base + i;
+            if (fi < pageStart || fi >= pageStart + pageLength) load(fi);
+            int k = (int) Math.min(to - i, pageStart + pageLength - fi);
+            System.arraycopy(page, (int) (fi - pageStart), dst, off + i - from, k);
+            i += k;
+        }
+    }
+
+    /** Read the page containing file index fi into the cache. */
+    private void load(long fi) {
+        try {
+            pageStart = fi - fi % PAGE_SIZE;
+            pageLength = (int) Math.min(PAGE_SIZE, size - pageStart);
+            io.clear();
+            io.limit(pageLength * 4);
+            long at = pageStart * 4;
+            while (io.hasRemaining()) {
+                int r = file.read(io, at);
+                if (r < 0) throw new IOException("spill file truncated");
+                at += r;
+            }
+            io.flip();
+            io.asIntBuffer().get(page, 0, pageLength);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Discard the first k code points, renumbering the rest. */
+    void discard(int k) {
+        base += k;
+        if (base == size) clear();
+    }
+
+    /** Discard the code points at index n and beyond, so that the next one appended
+     *  is at index n. */
+    void truncate(int n) {
+        size = base + n;
+        if (base == size) clear();
+        else if (pageStart + pageLength > size) {
+            pageStart = -1;
+            pageLength = 0;
+        }
+    }
+
+    /** Discard everything, reusing the file from its start. */
+    void clear() {
+        base = size = 0;
+        pageStart = -1;
+        pageLength = 0;
+    }
+
+    void close() throws IOException {
+        if (file != null) file.close();
+        file = null;
+        clear();
+    }
+}
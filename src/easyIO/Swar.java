@@ -0,0 +1,59 @@
+package easyIO;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Searches of byte arrays eight bytes at a time, treating a {@code long} as a
+ * vector of bytes ("SIMD within a register"). A byte equal to c is found as a zero
+ * byte of the word XORed with c in every byte; the expression in {@code zeros}
+ * flags the lowest zero byte of a word exactly, though it may also flag bytes
+ * above it, so the lowest flag gives the first match.
+ */
+final class Swar {
+    private static final VarHandle LONGS =
+        MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    private Swar() {}
+
+    /** The high bit of each byte of the result is set if the corresponding byte of
+     *  x is zero, and for no byte below the lowest zero byte. */
+    private static long zeros(long x) {
+        return (x - ONES) & ~x & HIGHS;
+    }
+
+    /** The index of the first byte in b[from..to-1] equal to c, or to if none is. */
+    static int indexOf(byte[] b, int from, int to, int c) {
+        long p = (c & 0xFF) * ONES;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long f = zeros((long) LONGS.get(b, i) ^ p);
+            if (f != 0) return i + (Long.numberOfTrailingZeros(f) >>> 3);
+        }
+        for (; i < to; i++) {
+            if (b[i] == (byte) c) return i;
+        }
+        return to;
+    }
+
+    /** The index of the first byte in b[from..to-1] equal to any of c0..c3, or to
+     *  if none is. */
+    static int indexOfAny(byte[] b, int from, int to, int c0, int c1, int c2, int c3) {
+        long p0 = (c0 & 0xFF) * ONES, p1 = (c1 & 0xFF) * ONES,
+             p2 = (c2 & 0xFF) * ONES, p3 = (c3 & 0xFF) * ONES;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long w = (long) LONGS.get(b, i);
+            long f = zeros(w ^ p0) | zeros(w ^ p1) | zeros(w ^ p2) | zeros(w ^ p3);
+            if (f != 0) return i + (Long.numberOfTrailingZeros(f) >>> 3);
+        }
+        for (; i < to; i++) {
+            byte x = b[i];
+            if (x == (byte) c0 || x == (byte) c1 || x == (byte) c2 || x == (byte) c3) return i;
+        }
+        return to;
+    }
+}
@@ -0,0 +1,129 @@
+package easyIO;
+
+import java.util.Arrays;
+
+/**
+ * A table of interned symbols, such as identifiers, each with a canonical
+ * {@code String} and a dense integer id numbered from 0. It can be attached to a
+ * {@code Scanner}, whose {@code nextIdentifier()} then returns canonical strings.
+ * Lookups are keyed directly on a {@code CharSequence}, typically a scanner's
+ * {@code TokenSpan}, so finding a symbol already in the table allocates nothing.
+ *
+ * The table is an open-addressing hash table with linear probing. It can be given a
+ * maximum size, beyond which new symbols are no longer added. It is not safe for
+ * concurrent use.
+ */
+public class SymbolTable {
+    private static final int INITIAL_SLOTS = 64;
+
+    /** Each slot holds 0 if it is empty, or one more than the id of a symbol. */
+    private int[] slots = new int[INITIAL_SLOTS];
+    /** The name and hash code of the symbol with each id. */
+    private String[] names = new String[INITIAL_SLOTS / 2];
+    private int[] hashes = new int[INITIAL_SLOTS / 2];
+    private int size = 0;
+    private final int maxSize;
+    private long hits = 0, misses = 0;
+
+    /** Create a table with no bound on its size. */
+    public SymbolTable() {
+        this(Integer.MAX_VALUE);
+    }
+
+    /** Create a table that holds at most maxSize symbols. */
+    public SymbolTable(int maxSize) {
+        if (maxSize < 0) throw new IllegalArgumentException("negative size: " + maxSize);
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * The canonical string with the same contents as s. If there is none yet, s is
+     * added to the table as a new string, unless the table is full, in which case a
+     * new string is returned without being added.
+     */
+    public String intern(CharSequence s) {
+        int id = id(s);
+        return id >= 0 ? names[id] : s.toString();
+    }
+
+    /**
+     * The id of the symbol with the same contents as s, adding s to the table if it
+     * is not there. Return -1 if it is not there and the table is full.
+     */
+    public int id(CharSequence s) {
+        int h = hash(s);
+        int m = slots.length - 1;
+        int i = (h ^ (h >>> 16)) & m;
+        while (true) {
+            int slot = slots[i];
+            if (slot == 0) break;
+            int id = slot - 1;
+            if (hashes[id] == h && names[id].contentEquals(s)) {
+                hits++;
+                return id;
+            }
+            i = (i + 1) & m;
+        }
+        misses++;
+        if (size == maxSize) return -1;
+        int id = size++;
+        if (id == names.length) {
+            names = Arrays.copyOf(names, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        names[id] = s.toString();
+        hashes[id] = h;
+        slots[i] = id + 1;
+        if (size * 2 > slots.length) rehash();
+        return id;
+    }
+
+    /** The hash code of the String with the same contents as s. */
+    private static int hash(CharSequence s) {
+        if (s instanceof String || s instanceof TokenSpan) return s.hashCode();
+        int h = 0;
+        for (int i = 0; i < s.length(); i++) h = 31 * h + s.charAt(i);
+        return h;
+    }
+
+    /** Double the number of slots, keeping the load factor at most 1/2. */
+    private void rehash() {
+        int[] s = new int[slots.length * 2];
+        int m = s.length - 1;
+        for (int id = 0; id < size; id++) {
+            int h = hashes[id];
+            int i = (h ^ (h >>> 16)) & m;
+            while (s[i] != 0) i = (i + 1) & m;
+            s[i] = id + 1;
+        }
+        slots = s;
+    }
+
+    /** The name of the symbol with the given id.
+     *  @throws IndexOutOfBoundsException if there is no such symbol. */
+    public String name(int id) {
+        if (id < 0 || id >= size) throw new IndexOutOfBoundsException(id);
+        return names[id];
+    }
+
+    /** The number of symbols in the table. */
+    public int size() {
+        return size;
+    }
+
+    /** The largest number of symbols the table will hold. */
+    public int maxSize() {
+        return maxSize;
+    }
+
+    /** The number of lookups that found their symbol already in the table. */
+    public long hits() {
+        return hits;
+    }
+
+    /** The number of lookups that did not find their symbol in the table, whether or
+     *  not it was then added. */
+    public long misses() {
+        return misses;
+    }
+}
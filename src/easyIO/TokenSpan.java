@@ -0,0 +1,195 @@
+package easyIO;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * A view of a token in a scanner's buffer: the characters between its most recent
+ * mark and its current position, as returned by {@code tokenView()}. Nothing is
+ * copied, so a token can be compared, hashed, parsed or written out without first
+ * creating a {@code String}; call {@code toString()} to keep it.
+ *
+ * A view is short-lived. The scanner reuses the same one for every call to
+ * {@code tokenView()}, and its contents are undefined once the scanner is used
+ * again. As a {@code CharSequence}, it counts a supplementary character as two
+ * chars, as a {@code String} does, and {@code hashCode()} agrees with that of the
+ * equivalent {@code String}.
+ */
+public final class TokenSpan implements CharSequence {
+    private final BacktrackScanner scanner;
+    /** The token is at positions from..to-1 of the scanner's buffer. */
+    private int from, to;
+    /** The length in chars, or -1 if not yet computed. */
+    private int length = -1;
+    /** The token as a string, if it has been needed. */
+    private String string;
+
+    TokenSpan(BacktrackScanner s) {
+        scanner = s;
+    }
+
+    void set(int from, int to) {
+        this.from = from;
+        this.to = to;
+        length = -1;
+        string = null;
+    }
+
+    /** The number of code points in the token. */
+    public int codePointCount() {
+        return to - from;
+    }
+
+    /** The code point at index i of the token, counting in code points. */
+    public int codePointAtIndex(int i) {
+        Objects.checkIndex(i, to - from);
+        return scanner.charAt(from + i);
+    }
+
+    @Override
+    public int length() {
+        if (length < 0) length = (to - from) + scanner.countSupplementary(from, to);
+        return length;
+    }
+
+    /** Whether every character is in the Basic Multilingual Plane, so that chars
+     *  and code points coincide. */
+    private boolean narrow() {
+        return length() == to - from;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (narrow()) {
+            Objects.checkIndex(index, length);
+            return (char) scanner.charAt(from + index);
+        }
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    /** Whether the token consists of the same chars as cs. */
+    public boolean contentEquals(CharSequence cs) {
+        int n = length();
+        if (cs.length() != n) return false;
+        if (narrow()) {
+            for (int i = 0; i < n; i++) {
+                if (cs.charAt(i) != (char) scanner.charAt(from + i)) return false;
+            }
+            return true;
+        }
+        int j = 0;
+        for (int i = from; i < to; i++) {
+            int c = scanner.charAt(i);
+            if (c < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                if (cs.charAt(j++) != (char) c) return false;
+            } else {
+                if (cs.charAt(j++) != Character.highSurrogate(c)
+                        || cs.charAt(j++) != Character.lowSurrogate(c)) return false;
+            }
+        }
+        return true;
+    }
+
+    /** Equal to another TokenSpan with the same contents. A TokenSpan is never equal
+     *  to a String; use contentEquals to compare with one. */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof TokenSpan t && contentEquals(t);
+    }
+
+    /** The hash code of the equivalent String. */
+    @Override
+    public int hashCode() {
+        int h = 0;
+        for (int i = from; i < to; i++) {
+            int c = scanner.charAt(i);
+            if (c < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                h = 31 * h + c;
+            } else {
+                h = 31 * (31 * h + Character.highSurrogate(c)) + Character.lowSurrogate(c);
+            }
+        }
+        return h;
+    }
+
+    /** Append the token to b. */
+    public void appendTo(StringBuilder b) {
+        for (int i = from; i < to; i++) {
+            int c = scanner.charAt(i);
+            if (c < Character.MIN_SUPPLEMENTARY_CODE_POINT) b.append((char) c);
+            else b.appendCodePoint(c);
+        }
+    }
+
+    /** Append the token to a. */
+    public void appendTo(Appendable a) throws IOException {
+        if (a instanceof StringBuilder b) {
+            appendTo(b);
+            return;
+        }
+        for (int i = from; i < to; i++) {
+            int c = scanner.charAt(i);
+            if (c < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                a.append((char) c);
+            } else {
+                a.append(Character.highSurrogate(c));
+                a.append(Character.lowSurrogate(c));
+            }
+        }
+    }
+
+    /** The token parsed as a decimal {@code int}, as by {@code Integer.parseInt}. */
+    public int parseInt() {
+        return (int) parseInteger(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /** The token parsed as a decimal {@code long}, as by {@code Long.parseLong}. */
+    public long parseLong() {
+        return parseInteger(Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /** The token parsed as a {@code double}, as by {@code Double.parseDouble}. */
+    public double parseDouble() {
+        return FloatParser.parseDouble(this);
+    }
+
+    /** The token parsed as an optionally signed decimal integer in [min, max],
+     *  with the magnitude held as an unsigned long, as Scanner does. */
+    private long parseInteger(long min, long max) {
+        int i = from;
+        boolean negative = false;
+        if (i < to) {
+            int c = scanner.charAt(i);
+            if (c == '-' || c == '+') {
+                negative = (c == '-');
+                i++;
+            }
+        }
+        if (i == to) throw numberFormat();
+        long bound = negative ? -min : max;
+        long q = Long.divideUnsigned(bound, 10);
+        int r = (int) Long.remainderUnsigned(bound, 10);
+        long m = 0;
+        for (; i < to; i++) {
+            int d = Scanner.digitValue(scanner.charAt(i));
+            if (d < 0 || Long.compareUnsigned(m, q) > 0 || (m == q && d > r)) throw numberFormat();
+            m = m * 10 + d;
+        }
+        return negative ? -m : m;
+    }
+
+    private NumberFormatException numberFormat() {
+        return new NumberFormatException("For input string: \"" + this + "\"");
+    }
+
+    @Override
+    public String toString() {
+        if (string == null) string = scanner.text(from, to);
+        return string;
+    }
+}
@@ -0,0 +1,75 @@
+package easyIO;
+
+import java.nio.ByteBuffer;
+
+/** Decoding of UTF-8 bytes directly into code points, for sources that read bytes. */
+class Utf8 {
+    private Utf8() {}
+
+    /** The code point delivered in place of malformed input. */
+    static final int REPLACEMENT = 0xFFFD;
+
+    /**
+     * Decode up to {@code len} code points from the bytes between the position and the
+     * limit of {@code in} into {@code dst}, starting at index {@code off}, advancing the
+     * position past the bytes decoded. Return the number of code points decoded.
+     *
+     * Malformed input is replaced by {@code REPLACEMENT} just as the JDK's UTF-8
+     * decoder replaces it: each byte that cannot begin a sequence, and each maximal
+     * prefix of a sequence that cannot be completed, becomes one replacement, and
+     * decoding resumes at the next byte. So an overlong or out-of-range sequence gives
+     * a replacement per byte, as its second byte already shows it is malformed, while
+     * an encoded surrogate gives one. A sequence cut off by the limit is left
+     * undecoded, unless {@code endOfInput} is true, in which case it is replaced.
+     */
+    static int decode(ByteBuffer in, int[] dst, int off, int len, boolean endOfInput) {
+        int p = in.position(), limit = in.limit();
+        int n = 0;
+        while (n < len && p < limit) {
+            int b = in.get(p);
+            if (b >= 0) { // ASCII runs are the common case
+                dst[off + n++] = b;
+                p++;
+                continue;
+            }
+            b &= 0xFF;
+            int need, cp;
+            if (b >= 0xC2 && b <= 0xDF) {
+                need = 1; cp = b & 0x1F;
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                need = 2; cp = b & 0x0F;
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                need = 3; cp = b & 0x07;
+            } else {
+                dst[off + n++] = REPLACEMENT;
+                p++;
+                continue;
+            }
+            int i = 1;
+            while (i <= need && p + i < limit) {
+                int c = in.get(p + i) & 0xFF;
+                if ((c & 0xC0) != 0x80) break;
+                // The second byte rules out overlong and out-of-range sequences.
+                if (i == 1 && (b == 0xE0 && c < 0xA0 || b == 0xF0 && c < 0x90
+                        || b == 0xF4 && c >= 0x90)) {
+                    break;
+                }
+                cp = (cp << 6) | (c & 0x3F);
+                i++;
+            }
+            if (i <= need) {
+                if (p + i == limit && !endOfInput) break; // wait for the rest
+                dst[off + n++] = REPLACEMENT;
+                p += i;
+                continue;
+            }
+            if (cp >= Character.MIN_SURROGATE && cp <= Character.MAX_SURROGATE) {
+                cp = REPLACEMENT;
+            }
+            dst[off + n++] = cp;
+            p += i;
+        }
+        in.position(p);
+        return n;
+    }
+}
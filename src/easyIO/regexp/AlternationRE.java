@@ -13,17 +13,15 @@ import static easyIO.regexp.StringRE.string;
  */
 public class AlternationRE extends RegExp {
     private final RegExp[] exprs;
-    private boolean isVoid, computedVoid = false;
+    private final boolean isVoid;
 
     /** An RE for r|s */
     private AlternationRE(RegExp ...rs) {
         exprs = rs;
         assert !Arrays.stream(exprs).anyMatch(RegExp::isVoid);
+        isVoid = Arrays.stream(exprs).allMatch(RegExp::isVoid);
     }
     @Override public boolean isVoid() {
-        if (computedVoid) return isVoid;
-        isVoid = Arrays.stream(exprs).allMatch(RegExp::isVoid);
-        computedVoid = true;
         return isVoid;
     }
     @Override public boolean nullable() {
@@ -41,6 +39,14 @@ public class AlternationRE extends RegExp {
         return alt(derivatives);
     }
 
+    @Override
+    protected Partition computeClasses() {
+        // C(a + b) = C(a) ∧ C(b)
+        Partition result = Partition.ALL;
+        for (RegExp r : exprs) result = result.meet(r.classes());
+        return result;
+    }
+
     public static RegExp alt(RegExp ...exprs) {
         // alternation is simplified by:
         //  1) flattening nested alternatives
@@ -92,6 +98,7 @@ public class AlternationRE extends RegExp {
 
     @Override
     public boolean equals(Object o) {
+        if (o == this) return true;
         if (o instanceof AlternationRE r) {
             if (exprs.length != r.exprs.length) return false;
             for (int i = 0; i < exprs.length; i++) {
@@ -0,0 +1,30 @@
+package easyIO.regexp;
+
+/**
+ * A deterministic automaton recognizing a regular expression, whose states are
+ * numbered by ints so that a matcher can step through it without allocating. State
+ * {@code DEAD} matches nothing and only goes to itself.
+ */
+public abstract class Automaton {
+    /** The state that matches nothing. */
+    public static final int DEAD = 0;
+
+    /** The initial state. */
+    public abstract int start();
+
+    /** The state after reading codepoint c in state q. */
+    public abstract int step(int q, int c);
+
+    /** Whether state q accepts. */
+    public abstract boolean nullable(int q);
+
+    /** The expression recognized from state q. */
+    public abstract RegExp regExp(int q);
+
+    /** The number of times the states have been renumbered. Ids of states other than
+     *  the initial one obtained before a renumbering are no longer valid; the state
+     *  returned by the step that caused it is. */
+    public long flushes() {
+        return 0;
+    }
+}
@@ -1,13 +1,13 @@
 package easyIO.regexp;
 
 public class Capture extends RegExp {
-    RegExp pattern;
+    final RegExp pattern;
     private Capture(RegExp e) {
         pattern = e;
     }
 
     public static RegExp capture(RegExp e) {
-        return new Capture(e);
+        return canonicalize(new Capture(e));
     }
 
     @Override
@@ -23,7 +23,12 @@ public class Capture extends RegExp {
     protected RegExp computeDerivative(int codepoint) {
         RegExp next = pattern.derivative(codepoint);
         if (next.isVoid()) return VoidRE.create();
-        return new Capture(next);
+        return canonicalize(new Capture(next));
+    }
+
+    @Override
+    protected Partition computeClasses() {
+        return pattern.classes();
     }
 
     public Matcher.State scan(int codepoint) {
@@ -38,6 +43,11 @@ public class Capture extends RegExp {
         b.append("))");
     }
 
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Capture c && pattern.equals(c.pattern);
+    }
+
     public int hashCode() {
         return pattern.hashCode() * 179;
     }
@@ -4,8 +4,8 @@ import static easyIO.regexp.StringRE.empty;
 import static easyIO.regexp.StringRE.quote;
 
 public class CharacterClass extends RegExp {
-    private int start, end;
-    boolean negated;
+    private final int start, end;
+    final boolean negated;
     public CharacterClass(int start, int end, boolean negated) {
         this.start = start;
         this.end = end;
@@ -23,8 +23,7 @@ public class CharacterClass extends RegExp {
 
     @Override
     public RegExp derivative(int codepoint) {
-        if ((codepoint >= start && codepoint <= end) != negated
-            || (start > end) == negated) {
+        if ((codepoint >= start && codepoint <= end) != negated) {
             return empty();
         } else {
             return VoidRE.create();
@@ -36,6 +35,11 @@ public class CharacterClass extends RegExp {
         return derivative(codepoint);
     }
 
+    @Override
+    protected Partition computeClasses() {
+        return Partition.range(start, end);
+    }
+
     @Override
     public void appendString(StringBuilder b, int precedence) {
         b.append('[');
@@ -69,6 +69,17 @@ public class Concat extends RegExp {
         return result;
     }
 
+    @Override
+    protected Partition computeClasses() {
+        // C(ab) = C(a) if a is not nullable, C(a) ∧ C(b) otherwise
+        Partition result = Partition.ALL;
+        for (RegExp r : exprs) {
+            result = result.meet(r.classes());
+            if (!r.nullable()) break;
+        }
+        return result;
+    }
+
     @Override
     public void appendString(StringBuilder b, int precedence) {
         if (precedence > 2) b.append("(");
@@ -80,9 +91,11 @@ public class Concat extends RegExp {
 
     @Override
     public boolean equals(Object o) {
+        if (o == this) return true;
         if (o instanceof Concat r) {
+            if (exprs.length != r.exprs.length) return false;
             for (int i = 0; i < exprs.length; i++) {
-                if (exprs[i] != r.exprs[i]) return false;
+                if (!exprs[i].equals(r.exprs[i])) return false;
             }
             return true;
         }
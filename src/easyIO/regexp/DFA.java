@@ -0,0 +1,127 @@
+package easyIO.regexp;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A deterministic finite automaton recognizing the same strings as a regular
+ * expression, compiled ahead of time by exploring all the Brzozowski derivatives
+ * reachable from it. Each distinct (canonical) derivative becomes a state, and the
+ * states are numbered densely from 0, so that a matcher can run a loop over int state
+ * ids: transitions are looked up in one flat table and whether a state accepts in a
+ * bitset, with no hashing or allocation per character.
+ *
+ * The table has a column per class of a partition of the codepoints that refines the
+ * partitions of all the states, so every codepoint, however wide, has a transition,
+ * and each is computed once per class rather than once per codepoint.
+ *
+ * State {@code DEAD} is the void expression. An expression with more than
+ * {@code MAX_STATES} derivatives is not compiled; a {@code LazyDFA} builds just the
+ * part of its automaton that the input reaches instead.
+ */
+public final class DFA extends Automaton {
+    /** The largest number of states compiled. */
+    public static final int MAX_STATES = 1024;
+
+    /** The expression of each state. */
+    private final RegExp[] states;
+    private final Partition classes;
+    private final int nclasses;
+    /** The transition from state q on a character of class k is table[q * nclasses + k]. */
+    private final int[] table;
+    /** Bit q is set if state q accepts the empty string. */
+    private final long[] nullable;
+    private final int start;
+
+    private DFA(RegExp[] states, Partition classes, int[] table, long[] nullable, int start) {
+        this.states = states;
+        this.classes = classes;
+        this.nclasses = classes.size();
+        this.table = table;
+        this.nullable = nullable;
+        this.start = start;
+    }
+
+    /** The automaton for r, or null if it would have more than MAX_STATES states. */
+    public static DFA compile(RegExp r) {
+        List<RegExp> states = new ArrayList<>();
+        Map<RegExp, Integer> ids = new HashMap<>();
+        states.add(VoidRE.create());
+        ids.put(VoidRE.create(), DEAD);
+        int start = DEAD;
+        if (!r.isVoid()) {
+            start = states.size();
+            states.add(r);
+            ids.put(r, start);
+        }
+        // First find the transitions of each state on the classes of its own partition.
+        List<int[]> own = new ArrayList<>();
+        own.add(new int[] {DEAD});
+        Partition classes = Partition.ALL;
+        for (int q = 1; q < states.size(); q++) {
+            RegExp re = states.get(q);
+            Partition p = re.classes();
+            classes = classes.meet(p);
+            int[] row = new int[p.size()];
+            for (int k = 0; k < row.length; k++) {
+                RegExp d = re.transientDerivative(p.representative(k));
+                Integer id = d.isVoid() ? Integer.valueOf(DEAD) : ids.get(d);
+                if (id == null) {
+                    if (states.size() == MAX_STATES) return null;
+                    id = states.size();
+                    states.add(d);
+                    ids.put(d, id);
+                }
+                row[k] = id;
+            }
+            own.add(row);
+        }
+        // Then spread them over the classes of the common partition.
+        int n = states.size(), m = classes.size();
+        int[] table = new int[n * m];
+        for (int q = 1; q < n; q++) {
+            Partition p = states.get(q).classes();
+            int[] row = own.get(q);
+            for (int k = 0; k < m; k++) {
+                table[q * m + k] = row[p.classOf(classes.representative(k))];
+            }
+        }
+        long[] nullable = new long[(n + 63) >> 6];
+        for (int q = 0; q < n; q++) {
+            if (states.get(q).nullable()) nullable[q >> 6] |= 1L << q;
+        }
+        return new DFA(states.toArray(RegExp.RegExps), classes, table, nullable, start);
+    }
+
+    @Override
+    public int start() {
+        return start;
+    }
+
+    /** The number of states. */
+    public int size() {
+        return states.length;
+    }
+
+    /** The partition of the codepoints that the transition table is indexed by. */
+    public Partition classes() {
+        return classes;
+    }
+
+    @Override
+    public int step(int q, int c) {
+        return table[q * nclasses + classes.classOf(c)];
+    }
+
+    @Override
+    public boolean nullable(int q) {
+        return (nullable[q >> 6] & 1L << q) != 0;
+    }
+
+    @Override
+    public RegExp regExp(int q) {
+        return states[q];
+    }
+}
@@ -0,0 +1,118 @@
+package easyIO.regexp;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The table in which regular expressions are hash-consed, so that equal expressions
+ * built by the factory methods are usually the same object and share their memoized
+ * derivatives. It is safe for concurrent use.
+ *
+ * The table only refers weakly to the expressions in it, so an expression that
+ * nothing else uses, such as a derivative left behind by a discarded pattern, can be
+ * garbage-collected. The table also holds at most {@code maxSize()} expressions; when
+ * it grows beyond that, arbitrary entries are evicted. An evicted expression stays
+ * valid, but an equal one built later is a different object, so interning is an
+ * optimization that matching does not depend on.
+ */
+public final class InternTable {
+    /** The default largest number of expressions held. */
+    public static final int DEFAULT_MAX_SIZE = 1 << 16;
+
+    private final ConcurrentHashMap<Ref, Ref> table = new ConcurrentHashMap<>();
+    private final ReferenceQueue<RegExp> queue = new ReferenceQueue<>();
+    private volatile int maxSize = DEFAULT_MAX_SIZE;
+    private final LongAdder evictions = new LongAdder(), collected = new LongAdder();
+
+    /** A weak reference to an expression, equal to another for an equal expression. */
+    private static final class Ref extends WeakReference<RegExp> {
+        final int hash;
+
+        Ref(RegExp r, ReferenceQueue<RegExp> q) {
+            super(r, q);
+            hash = r.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        /** A reference whose expression has been collected is only equal to itself. */
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Ref other) || other.hash != hash) return false;
+            RegExp r = get();
+            return r != null && r.equals(other.get());
+        }
+    }
+
+    /** The expression in the table equal to r, adding r if there is none. */
+    RegExp intern(RegExp r) {
+        purge();
+        Ref ref = new Ref(r, queue);
+        while (true) {
+            Ref existing = table.putIfAbsent(ref, ref);
+            if (existing == null) {
+                if (table.size() > maxSize) evict(ref);
+                return r;
+            }
+            RegExp e = existing.get();
+            if (e != null) return e;
+            table.remove(existing, existing); // collected since it was found
+        }
+    }
+
+    /** Remove the entries whose expressions have been collected. */
+    private void purge() {
+        for (Object o; (o = queue.poll()) != null; ) {
+            Ref ref = (Ref) o;
+            if (table.remove(ref, ref)) collected.increment();
+        }
+    }
+
+    /** Evict entries other than keep until the table is at most 3/4 full. */
+    private void evict(Ref keep) {
+        int target = maxSize - maxSize / 4;
+        Iterator<Ref> i = table.keySet().iterator();
+        while (table.size() > target && i.hasNext()) {
+            Ref ref = i.next();
+            if (ref == keep) continue;
+            i.remove();
+            evictions.increment();
+        }
+    }
+
+    /** The number of expressions in the table. */
+    public int size() {
+        purge();
+        return table.size();
+    }
+
+    /** The largest number of expressions the table holds. */
+    public int maxSize() {
+        return maxSize;
+    }
+
+    /** Set the largest number of expressions the table holds, evicting entries now if
+     *  it holds more. */
+    public void setMaxSize(int n) {
+        if (n < 1) throw new IllegalArgumentException("size must be positive: " + n);
+        maxSize = n;
+        if (table.size() > n) evict(null);
+    }
+
+    /** The number of entries evicted to keep the table within its maximum size. */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /** The number of entries removed because their expressions were garbage-collected. */
+    public long collected() {
+        return collected.sum();
+    }
+}
@@ -0,0 +1,151 @@
+package easyIO.regexp;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * An automaton that materializes the states and transitions of a DFA only as
+ * matching reaches them, for expressions whose full DFA would be too big to build
+ * ahead of time. States are the derivatives of the expression, as for {@code DFA},
+ * but held in a cache of at most {@code maxStates} states. When it fills up, the cache
+ * is flushed and rebuilt from the current state's derivative, so memory stays bounded
+ * however many distinct derivatives the input leads to, and matching stays correct,
+ * only slower.
+ *
+ * The transition table has a column per class of a partition that refines the
+ * partitions of all the cached states. A new state that needs a finer one also
+ * flushes the cache. A lazy automaton is not safe for concurrent use.
+ */
+public final class LazyDFA extends Automaton {
+    /** The default number of states cached. */
+    public static final int DEFAULT_MAX_STATES = 4096;
+    /** A transition not computed yet. */
+    private static final int UNKNOWN = -1;
+
+    private final RegExp expr;
+    private final int maxStates;
+    private Partition classes;
+    private int nclasses;
+    /** The expression of each cached state, and the id of each. */
+    private RegExp[] states;
+    private final HashMap<RegExp, Integer> ids = new HashMap<>();
+    private int size;
+    private int start;
+    /** The transition from state q on a character of class k is table[q * nclasses + k]. */
+    private int[] table;
+    /** Bit q is set if state q accepts the empty string. */
+    private long[] nullable;
+    private long flushes = 0;
+
+    /** An automaton for r that caches at most maxStates states, which must be room
+     *  for the dead state, the initial state and one more. */
+    public LazyDFA(RegExp r, int maxStates) {
+        if (maxStates < 3) throw new IllegalArgumentException("too few states: " + maxStates);
+        expr = r;
+        this.maxStates = maxStates;
+        classes = r.classes();
+        nclasses = classes.size();
+        allocate(Math.min(maxStates, 16));
+        reset();
+    }
+
+    /** Make room for n states, keeping those already cached. */
+    private void allocate(int n) {
+        int[] t = new int[n * nclasses];
+        Arrays.fill(t, UNKNOWN);
+        if (table != null) System.arraycopy(table, 0, t, 0, size * nclasses);
+        table = t;
+        states = states == null ? new RegExp[n] : Arrays.copyOf(states, n);
+        nullable = nullable == null ? new long[(n + 63) >> 6] : Arrays.copyOf(nullable, (n + 63) >> 6);
+    }
+
+    /** Empty the cache, leaving only the dead and initial states. */
+    private void reset() {
+        Arrays.fill(table, 0, size * nclasses, UNKNOWN);
+        Arrays.fill(states, 0, size, null);
+        Arrays.fill(nullable, 0);
+        ids.clear();
+        size = 0;
+        add(VoidRE.create());
+        Arrays.fill(table, 0, nclasses, DEAD);
+        start = expr.isVoid() ? DEAD : add(expr);
+    }
+
+    /** Cache a new state for r and return its id. Requires: there is room. */
+    private int add(RegExp r) {
+        if (size == states.length) allocate(Math.min(states.length * 2, maxStates));
+        int q = size++;
+        states[q] = r;
+        ids.put(r, q);
+        if (r.nullable()) nullable[q >> 6] |= 1L << q;
+        return q;
+    }
+
+    @Override
+    public int start() {
+        return start;
+    }
+
+    @Override
+    public int step(int q, int c) {
+        int t = table[q * nclasses + classes.classOf(c)];
+        return t != UNKNOWN ? t : miss(q, c);
+    }
+
+    /** Compute and cache the transition from q on c. */
+    private int miss(int q, int c) {
+        RegExp d = states[q].transientDerivative(c);
+        if (d.isVoid()) return table[q * nclasses + classes.classOf(c)] = DEAD;
+        Integer id = ids.get(d);
+        if (id != null) return table[q * nclasses + classes.classOf(c)] = id;
+        Partition p = classes.meet(d.classes());
+        if (p != classes) {
+            classes = p;
+            nclasses = p.size();
+            table = null;
+            states = null;
+            nullable = null;
+            size = 0;
+            allocate(Math.min(maxStates, 16));
+            flush();
+            return add(d);
+        }
+        if (size == maxStates) {
+            flush();
+            return add(d);
+        }
+        int r = add(d);
+        table[q * nclasses + classes.classOf(c)] = r;
+        return r;
+    }
+
+    private void flush() {
+        flushes++;
+        reset();
+    }
+
+    @Override
+    public boolean nullable(int q) {
+        return (nullable[q >> 6] & 1L << q) != 0;
+    }
+
+    @Override
+    public RegExp regExp(int q) {
+        return states[q];
+    }
+
+    @Override
+    public long flushes() {
+        return flushes;
+    }
+
+    /** The number of states cached. */
+    public int size() {
+        return size;
+    }
+
+    /** The largest number of states cached. */
+    public int maxStates() {
+        return maxStates;
+    }
+}
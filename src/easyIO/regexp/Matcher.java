@@ -1,34 +1,63 @@
 package easyIO.regexp;
 
 import easyIO.BacktrackScanner;
-import easyIO.EOF;
+import easyIO.CharSequenceSource;
 
-import java.io.StringReader;
 import java.util.*;
 
 import static easyIO.StdIO.print;
 import static easyIO.StdIO.println;
 
+/** The state of matching a {@code Pattern} against input. A matcher is not safe for
+ *  concurrent use, but is cheap to create, and any number of matchers can share the
+ *  same pattern. */
 public class Matcher {
     private static final boolean DEBUG = false;
     private final ArrayList<String> captures = new ArrayList<>();
-    private State state;
-    private RegExp expr;
-    record IndexedState(int index, RegExp r) {}
-    private Set<IndexedState> hopelessStates = null;
+    private final Pattern pattern;
+    private final Automaton dfa;
+    private int state;
+    /** The value of dfa.flushes() when the states recorded below were reached. */
+    private long flushes;
+    /** The (position, state) pairs from which search() knows no match can be
+     *  extended, for input from scanner memoFor in generation memoGeneration. */
+    private final PositionStates hopelessStates = new PositionStates();
+    private BacktrackScanner memoFor;
+    private long memoGeneration;
+    /** The states search() has passed through since the last match, indexed by
+     *  position relative to where the current attempt started, and the first
+     *  position whose state is still valid. */
+    private int[] trail = new int[64];
+    private int trailFrom;
+
+    /** Create a matcher for p. */
+    public Matcher(Pattern p) {
+        pattern = p;
+        dfa = p.automaton();
+        reset();
+    }
+
+    /** Create a matcher for r, using its compiled DFA, or a lazily built one with the
+     *  default cache size if its DFA is too big to compile. */
     public Matcher(RegExp r) {
-        expr = r;
-        state = new State(r);
+        this(Pattern.compile(r));
+    }
+
+    /** Create a matcher for r that builds its automaton lazily, caching at most
+     *  maxStates states, so its memory use is bounded whatever the input. */
+    public Matcher(RegExp r, int maxStates) {
+        this(Pattern.compile(r, maxStates));
     }
+
     /** Create a matcher based on a regular expression to be parsed.
      * Requires: the regular expression must be valid. */
     public Matcher(String pat) {
-        try {
-            expr = Parser.parse(pat);
-        } catch (Parser.SyntaxError e) {
-            throw new IllegalArgumentException("Invalid regular expression: " + pat);
-        }
-        state = new State(expr);
+        this(Pattern.compile(pat));
+    }
+
+    /** The pattern this matcher matches. */
+    public Pattern pattern() {
+        return pattern;
     }
 
     public record State (
@@ -39,30 +68,31 @@ public class Matcher {
         static FailedMatch exception = new FailedMatch();
     }
     public List<String> match(String s) throws FailedMatch {
-        return match(new BacktrackScanner(new BacktrackScanner.ReaderSource(new StringReader(s), s)));
+        return match(new BacktrackScanner(new CharSequenceSource(s, s)));
+    }
+
+    private void reset() {
+        state = dfa.start();
     }
-    private void reportState(int pos, State state, int ch) {
-        print(pos + ". State is now RE=" + state.re);
+
+    private void reportState(int pos, int ch) {
+        print(pos + ". State is now RE=" + dfa.regExp(state));
         if (ch != 0) println(", input character = " + ((char) ch));
         else println();
     }
     /** Whether the regular expression matches the entire input. */
     public List<String> match(BacktrackScanner s) throws FailedMatch {
-        while (s.hasNext()) {
-            int ch;
-            try {
-                ch = s.nextCodePoint();
-            } catch (EOF exc) {
-                break;
-            }
-            if (DEBUG) reportState(s.inputPosition(), state, ch);
-            state = state.re.scan(ch, this);
-            if (state.re.isVoid()) {
+        reset();
+        int ch;
+        while ((ch = s.nextCodePointOrEOF()) != -1) {
+            if (DEBUG) reportState(s.inputPosition(), ch);
+            state = dfa.step(state, ch);
+            if (state == Automaton.DEAD) {
                 throw FailedMatch.exception;
             }
         }
-        if (DEBUG) reportState(s.inputPosition(), state, 0);
-        if (state.re.nullable())
+        if (DEBUG) reportState(s.inputPosition(), 0);
+        if (dfa.nullable(state))
             return captures;
         else
             throw FailedMatch.exception;
@@ -78,67 +108,130 @@ public class Matcher {
         // This implementation avoids backtracking by memoizing hopeless states, so
         // it avoids the typical quadratic worst-case complexity of maximal munch tokenization.
         boolean success = false;
-        state = new State(expr);
-        if (hopelessStates == null) hopelessStates = new HashSet<>();
-        Map<Integer, IndexedState> seenStates = new HashMap<>(); // states seen along the way
+        reset();
+        if (memoFor != s || memoGeneration != s.generation() || flushes != dfa.flushes()) {
+            hopelessStates.clear();
+            memoFor = s;
+            memoGeneration = s.generation();
+            flushes = dfa.flushes();
+        }
         s.mark(); // start mark
-        int end = s.inputPosition();
-        while (s.hasNext()) {
+        int start = s.inputPosition();
+        int end = start;
+        trailFrom = start;
+        int ch;
+        while ((ch = s.nextCodePointOrEOF()) != -1) {
             // if success:  ---------^---------^--------|------
             //                     start.     end.     current
             //
             //.if no success: --------^------------------|-----
             //                      start              current
-            RegExp re = state.re;
-            try {
-                int pos = s.inputPosition();
-                int ch = s.nextCodePoint();
-                if (DEBUG) reportState(pos, state, ch);
-                state = re.scan(ch, this);
-
-                seenStates.put(pos, new IndexedState(pos, state.re));
-            } catch (EOF exc) {
-                break;
+            if (DEBUG) reportState(s.inputPosition() - 1, ch);
+            state = dfa.step(state, ch);
+            int pos = s.inputPosition();
+            if (flushes != dfa.flushes()) {
+                // The states seen so far have been renumbered.
+                hopelessStates.clear();
+                flushes = dfa.flushes();
+                trailFrom = pos;
             }
-            if (state.re.nullable()) {
+            record(pos - start);
+            if (dfa.nullable(state)) {
+                if (success) s.accept(); // the previous end mark
                 success = true;
                 s.mark(); // end mark, so we can roll back to this position
-                end = s.inputPosition();
-            } else if (state.re.isVoid() || hopelessStates.contains(new IndexedState(s.inputPosition(), state.re))) {
-                if (DEBUG && hopelessStates.contains(new IndexedState(s.inputPosition(), state.re))) {
+                end = pos;
+            } else if (state == Automaton.DEAD || hopelessStates.contains(pos, state)) {
+                if (DEBUG && state != Automaton.DEAD) {
                     println("Abandoning early because state is hopeless");
                 }
                 if (success) {
-                    int pos = s.inputPosition();
-                    for (int i = end; i < pos; i++) {
-                        IndexedState h = seenStates.get(i);
-                        assert h != null;
-                        hopelessStates.add(h);
-                    }
-                    // roll back to previous end mark
-                    s.abort();
-                    seenStates.clear();
-                    return captures;
+                    return finish(s, start, end, pos);
                 }
                 s.abort(); // clear old start mark
                 s.advance();
                 s.mark(); // new start mark
-                state = new State(expr);
+                start = end = trailFrom = s.inputPosition();
+                reset();
             }
         }
-        if (success) { // XXX this repeats code from above.
-            int pos = s.inputPosition();
-            for (int i = end; i < pos; i++) {
-                IndexedState h = seenStates.get(i);
-                assert h != null;
-                hopelessStates.add(h);
-            }
-            // roll back to previous end mark
-            s.abort();
-            seenStates.clear();
-            return captures;
+        if (success) {
+            return finish(s, start, end, s.inputPosition());
         } else {
             throw FailedMatch.exception;
         }
     }
+
+    /** Record the current state as the one reached at the given position. */
+    private void record(int offset) {
+        if (offset >= trail.length) trail = Arrays.copyOf(trail, Math.max(trail.length * 2, offset + 1));
+        trail[offset] = state;
+    }
+
+    /** Conclude a successful search: the states passed through after the end of the
+     *  match at position end, up to position pos, cannot lead to a longer match, so
+     *  they are memoized as hopeless. Then roll back to the end mark. */
+    private List<String> finish(BacktrackScanner s, int start, int end, int pos) {
+        for (int i = Math.max(end + 1, trailFrom); i <= pos; i++) {
+            int q = trail[i - start];
+            if (q != Automaton.DEAD) hopelessStates.add(i, q);
+        }
+        s.abort();
+        return captures;
+    }
+
+    /** A set of (position, state) pairs, as an open-addressing hash table of longs. */
+    private static final class PositionStates {
+        private static final long EMPTY = -1;
+        private long[] keys = newKeys(16);
+        private int size = 0;
+
+        private static long[] newKeys(int n) {
+            long[] k = new long[n];
+            Arrays.fill(k, EMPTY);
+            return k;
+        }
+
+        private static int slot(long key, int mask) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 40) & mask;
+        }
+
+        boolean contains(int pos, int q) {
+            if (size == 0) return false;
+            long key = (long) pos << 32 | q;
+            int m = keys.length - 1;
+            for (int i = slot(key, m); keys[i] != EMPTY; i = (i + 1) & m) {
+                if (keys[i] == key) return true;
+            }
+            return false;
+        }
+
+        void add(int pos, int q) {
+            long key = (long) pos << 32 | q;
+            int m = keys.length - 1;
+            int i = slot(key, m);
+            for (; keys[i] != EMPTY; i = (i + 1) & m) {
+                if (keys[i] == key) return;
+            }
+            keys[i] = key;
+            if (++size * 2 > keys.length) {
+                long[] old = keys;
+                keys = newKeys(old.length * 2);
+                m = keys.length - 1;
+                for (long k : old) {
+                    if (k == EMPTY) continue;
+                    int j = slot(k, m);
+                    while (keys[j] != EMPTY) j = (j + 1) & m;
+                    keys[j] = k;
+                }
+            }
+        }
+
+        void clear() {
+            if (size == 0) return;
+            Arrays.fill(keys, EMPTY);
+            size = 0;
+        }
+    }
 }
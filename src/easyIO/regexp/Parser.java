@@ -1,9 +1,9 @@
 package easyIO.regexp;
 
 import easyIO.BacktrackScanner;
+import easyIO.CharSequenceSource;
 import easyIO.EOF;
 
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -27,7 +27,7 @@ public class Parser {
         }
     }
     public static RegExp parse(String s) throws SyntaxError {
-        return parseAlts(new BacktrackScanner(new StringReader(s)));
+        return parseAlts(new BacktrackScanner(new CharSequenceSource(s, "pattern")));
     }
 
     public static RegExp parseAlts(BacktrackScanner b) throws SyntaxError {
@@ -0,0 +1,91 @@
+package easyIO.regexp;
+
+import java.util.Arrays;
+
+/**
+ * A partition of the code points into classes of consecutive code points. Class k
+ * runs from {@code starts[k]} up to the start of the next class, and class 0 starts
+ * at 0. Finding the class of a code point is a table lookup for ASCII and a binary
+ * search of the starts otherwise.
+ *
+ * A regular expression's partition puts two code points in the same class only if it
+ * has the same derivative with respect to both, so that derivatives, and the
+ * transitions of an automaton, need only be computed once per class. The partitions
+ * are the approximations of Owens, Reppy and Turon, "Regular-expression derivatives
+ * re-examined", J. Functional Programming 19(2), 2009, restricted to intervals.
+ */
+public final class Partition {
+    private static final int ASCII = 128;
+    /** The partition with one class, of all code points. */
+    static final Partition ALL = new Partition(new int[] {0});
+
+    private final int[] starts;
+    /** The class of each ASCII character. */
+    private final int[] ascii = new int[ASCII];
+
+    private Partition(int[] starts) {
+        assert starts.length > 0 && starts[0] == 0;
+        this.starts = starts;
+        int k = 0;
+        for (int c = 0; c < ASCII; c++) {
+            while (k + 1 < starts.length && starts[k + 1] <= c) k++;
+            ascii[c] = k;
+        }
+    }
+
+    /** The partition that separates the code points in [lo, hi] from the rest. */
+    static Partition range(int lo, int hi) {
+        if (lo > hi) return ALL;
+        int[] s = {0, lo, hi + 1};
+        if (lo == 0) s = new int[] {0, hi + 1};
+        if (hi == Character.MAX_CODE_POINT) s = Arrays.copyOf(s, s.length - 1);
+        return s.length == 1 ? ALL : new Partition(s);
+    }
+
+    /** The coarsest partition that refines both this one and p: two code points
+     *  are in the same class only if they are in the same class of each. */
+    Partition meet(Partition p) {
+        if (p == this || p == ALL) return this;
+        if (this == ALL) return p;
+        int[] s = new int[starts.length + p.starts.length];
+        int i = 0, j = 0, n = 0;
+        while (i < starts.length || j < p.starts.length) {
+            int a = i < starts.length ? starts[i] : Integer.MAX_VALUE;
+            int b = j < p.starts.length ? p.starts[j] : Integer.MAX_VALUE;
+            int c = Math.min(a, b);
+            s[n++] = c;
+            if (a == c) i++;
+            if (b == c) j++;
+        }
+        if (n == starts.length) return this;
+        if (n == p.starts.length) return p;
+        return new Partition(Arrays.copyOf(s, n));
+    }
+
+    /** The number of classes. */
+    public int size() {
+        return starts.length;
+    }
+
+    /** The class containing code point c. */
+    public int classOf(int c) {
+        if (c < ASCII) return ascii[c];
+        int lo = ascii[ASCII - 1], hi = starts.length - 1; // answer is in [lo, hi]
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (starts[mid] <= c) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    /** The smallest code point in class k. */
+    public int representative(int k) {
+        return starts[k];
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(starts);
+    }
+}
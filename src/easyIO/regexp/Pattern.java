@@ -0,0 +1,68 @@
+package easyIO.regexp;
+
+/**
+ * A compiled regular expression. A pattern is immutable: it holds the expression and,
+ * unless it is too big, the DFA compiled from it, and all the state of a match is kept
+ * in the {@code Matcher} objects it creates. So a pattern compiled once can be shared
+ * by any number of threads, each matching through cheap matchers of its own, without
+ * locking. A pattern whose DFA would have more than {@code DFA.MAX_STATES} states
+ * gives each of its matchers a {@code LazyDFA} of its own instead.
+ *
+ * The derivatives of subexpressions that the automata's transitions are built from
+ * are memoized in the expressions, which publish them by compare-and-set, so threads
+ * that compute the same derivative at once agree on a single result.
+ */
+public final class Pattern {
+    private final RegExp expr;
+    /** The compiled automaton, or null if matchers build their own lazily. */
+    private final DFA dfa;
+    private final int maxStates;
+
+    private Pattern(RegExp r, DFA dfa, int maxStates) {
+        expr = r;
+        this.dfa = dfa;
+        this.maxStates = maxStates;
+    }
+
+    /** The pattern for r, compiled to a DFA if it is small enough. */
+    public static Pattern compile(RegExp r) {
+        return new Pattern(r, r.dfa(), LazyDFA.DEFAULT_MAX_STATES);
+    }
+
+    /** The pattern for r, whose matchers each build its automaton lazily, caching at
+     *  most maxStates states, so their memory use is bounded whatever the input. */
+    public static Pattern compile(RegExp r, int maxStates) {
+        if (maxStates < 3) throw new IllegalArgumentException("too few states: " + maxStates);
+        return new Pattern(r, null, maxStates);
+    }
+
+    /** The pattern for the regular expression pat.
+     *  @throws IllegalArgumentException if pat is not a valid regular expression. */
+    public static Pattern compile(String pat) {
+        try {
+            return compile(Parser.parse(pat));
+        } catch (Parser.SyntaxError e) {
+            throw new IllegalArgumentException("Invalid regular expression: " + pat);
+        }
+    }
+
+    /** A new matcher for this pattern, for use by one thread at a time. */
+    public Matcher matcher() {
+        return new Matcher(this);
+    }
+
+    /** The regular expression this pattern was compiled from. */
+    public RegExp regExp() {
+        return expr;
+    }
+
+    /** The automaton for a new matcher to use. */
+    Automaton automaton() {
+        return dfa != null ? dfa : new LazyDFA(expr, maxStates);
+    }
+
+    @Override
+    public String toString() {
+        return expr.toString();
+    }
+}
@@ -1,19 +1,42 @@
 package easyIO.regexp;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 
 import static easyIO.StdIO.println;
 
 /** A regular expression, with support for matching and searching an input sourc, based on
  * Brzozowski derivatives.
+ *
+ * Expressions are immutable apart from what they memoize: their character classes,
+ * derivatives and DFA. Each of these is published by compare-and-set, so an
+ * expression can be used by several threads at once, and threads that compute the
+ * same thing at the same time all use whichever result was published first.
  */
 public abstract class RegExp {
-    /** A memoization map from next characters (Unicode codepoints)
-     * to Brzozowski derivatives: regular expressions recognizing
-     * the suffix of the expression. */
-    private final Map<Integer, RegExp> derivatives = new HashMap<>();
-    static final HashMap<RegExp, RegExp> regExps = new HashMap<>();
+    /** The classes of characters with the same derivative, once computed. */
+    private Partition classes;
+    /** A memoization table from character classes to Brzozowski derivatives:
+     * regular expressions recognizing the suffix of the expression. */
+    private RegExp[] derivatives;
+    static final InternTable regExps = new InternTable();
+    /** The automaton for this expression once it has been compiled, or TOO_BIG if
+     * compiling it failed. */
+    private Object dfa;
+    private static final Object TOO_BIG = new Object();
+
+    private static final VarHandle CLASSES, DERIVATIVES, DFA_;
+    private static final VarHandle DERIVATIVE = MethodHandles.arrayElementVarHandle(RegExp[].class);
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            CLASSES = lookup.findVarHandle(RegExp.class, "classes", Partition.class);
+            DERIVATIVES = lookup.findVarHandle(RegExp.class, "derivatives", RegExp[].class);
+            DFA_ = lookup.findVarHandle(RegExp.class, "dfa", Object.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
 
     private static final boolean DEBUG = false;
 
@@ -26,33 +49,90 @@ public abstract class RegExp {
         return true;
     }
 
-    /** Regular expressions are interned so that there is only one instance of
-     * an equal regular expression. This is the canonical instance representing
+    /** Regular expressions are interned so that there is usually only one instance
+     * of an equal regular expression. This is the canonical instance representing
      * that regular expression. The factory methods for regular expressions all
-     * return canonical instances.
+     * return canonical instances, unless the intern table has since evicted or
+     * collected them; equality never depends on it.
      */
     static RegExp canonicalize(RegExp r) {
-        RegExp result = regExps.get(r);
-        if (result == null) {
-            regExps.put(r,r);
-            result = r;
+        return regExps.intern(r);
+    }
+
+    /** The table in which regular expressions are interned. */
+    public static InternTable internTable() {
+        return regExps;
+    }
+
+    /** A partition of the codepoints such that this regular expression has the same
+     * derivative with respect to every codepoint in a class. */
+    public Partition classes() {
+        Partition p = (Partition) CLASSES.getAcquire(this);
+        if (p == null) {
+            p = computeClasses();
+            Partition witness = (Partition) CLASSES.compareAndExchange(this, null, p);
+            if (witness != null) p = witness;
         }
-        return result;
+        return p;
     }
 
-    /** The (canonical) Brzozowski derivative of this regular expression. */
+    /** The (canonical) Brzozowski derivative of this regular expression. It is
+     * computed once for each class of classes(). */
     public RegExp derivative(int codepoint) {
-        RegExp derivative = derivatives.get(codepoint);
+        Partition p = classes();
+        int k = p.classOf(codepoint);
+        RegExp[] ds = (RegExp[]) DERIVATIVES.getAcquire(this);
+        if (ds == null) {
+            ds = new RegExp[p.size()];
+            RegExp[] witness = (RegExp[]) DERIVATIVES.compareAndExchange(this, null, ds);
+            if (witness != null) ds = witness;
+        }
+        RegExp derivative = (RegExp) DERIVATIVE.getAcquire(ds, k);
         if (derivative == null) {
             if (DEBUG) {
                 println("Computing derivative of " + this + " (" + address() + ") with symbol " + Character.toString(codepoint));
             }
             derivative = computeDerivative(codepoint);
-            derivatives.put(codepoint, derivative);
+            RegExp witness = (RegExp) DERIVATIVE.compareAndExchange(ds, k, null, derivative);
+            if (witness != null) derivative = witness;
         }
         return derivative;
     }
 
+    /** The derivative of this regular expression, without memoizing it here if it
+     * has not been already. The derivatives of its subexpressions are memoized as
+     * usual. An automaton keeps its own table of the derivatives of its states, so
+     * it uses this rather than derivative(), lest the memos link every state it ever
+     * explored to the next and keep them all reachable from the initial one. */
+    RegExp transientDerivative(int codepoint) {
+        RegExp[] ds = (RegExp[]) DERIVATIVES.getAcquire(this);
+        if (ds != null) {
+            RegExp derivative = (RegExp) DERIVATIVE.getAcquire(ds, classes().classOf(codepoint));
+            if (derivative != null) return derivative;
+        }
+        return computeDerivative(codepoint);
+    }
+
+    /** The derivatives memoized so far, indexed by class of classes(), with null
+     * for those not computed. */
+    RegExp[] memoizedDerivatives() {
+        RegExp[] ds = (RegExp[]) DERIVATIVES.getAcquire(this);
+        return ds == null ? RegExps : ds.clone();
+    }
+
+    /** The automaton recognizing this expression, compiled when first needed, or
+     * null if it has more than DFA.MAX_STATES states. */
+    public DFA dfa() {
+        Object d = DFA_.getAcquire(this);
+        if (d == null) {
+            d = DFA.compile(this);
+            if (d == null) d = TOO_BIG;
+            Object witness = DFA_.compareAndExchange(this, null, d);
+            if (witness != null) d = witness;
+        }
+        return d == TOO_BIG ? null : (DFA) d;
+    }
+
     /**
      * Scan a single codepoint and return the updated matcher state.
      */
@@ -67,6 +147,11 @@ public abstract class RegExp {
      */
     protected abstract RegExp computeDerivative(int codepoint);
 
+    /** The partition of codepoints returned by classes(), computed without relying
+     * on it having been computed already. A partition is only required to be fine
+     * enough, not the coarsest possible. */
+    protected abstract Partition computeClasses();
+
     public String toString() {
         StringBuilder b = new StringBuilder();
         b.append('/');
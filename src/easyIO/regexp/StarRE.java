@@ -35,6 +35,12 @@ public class StarRE extends RegExp {
         return concat(expr.derivative(codepoint), this);
     }
 
+    @Override
+    protected Partition computeClasses() {
+        // C(a*) = C(a)
+        return expr.classes();
+    }
+
     @Override
     public void appendString(StringBuilder b, int precedence) {
         expr.appendString(b, 3);
@@ -43,6 +43,13 @@ public class StringRE extends RegExp {
         return VoidRE.create();
     }
 
+    @Override
+    protected Partition computeClasses() {
+        // C(xa) = {x}, Σ\{x}
+        if (chars.isEmpty()) return Partition.ALL;
+        return Partition.range(chars.charAt(0), chars.charAt(0));
+    }
+
     @Override
     public void appendString(StringBuilder b, int precedence) {
         if (precedence > 2 && chars.length() > 1) b.append('(');
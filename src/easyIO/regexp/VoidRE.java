@@ -24,6 +24,11 @@ public class VoidRE extends RegExp {
         return this;
     }
 
+    @Override
+    protected Partition computeClasses() {
+        return Partition.ALL;
+    }
+
     @Override
     public void appendString(StringBuilder b, int precedence) {
         b.append("[]");
@@ -0,0 +1,44 @@
+import easyIO.CharSequenceSource;
+import easyIO.EOF;
+import easyIO.Scanner;
+
+/** Compares finding the ends of long lines a character at a time with eol(), which
+ *  searches the buffer eight characters at a time. Each is timed reading the input
+ *  and then rescanning it once it is buffered, which isolates the search itself.
+ *  Arguments (optional): the line length and the number of lines. */
+public class DelimiterBenchmark {
+    public static void main(String[] args) throws EOF {
+        int lineLength = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int lines = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            for (int j = 0; j < lineLength; j++) b.append((char) ('a' + (i + j) % 26));
+            b.append('\n');
+        }
+        String text = b.toString();
+        for (int round = 0; round < 5; round++) {
+            Scanner s = new Scanner(new CharSequenceSource(text, "text"));
+            double read1 = rate(text, s, false, false), rescan1 = rate(text, s, false, true);
+            s = new Scanner(new CharSequenceSource(text, "text"));
+            double read2 = rate(text, s, true, false), rescan2 = rate(text, s, true, true);
+            System.out.printf("per character: %5.0f / %5.0f Mchar/s   eol(): %5.0f / %5.0f Mchar/s%n",
+                    read1, rescan1, read2, rescan2);
+        }
+    }
+
+    /** The rate at which the lines of s are scanned, leaving a mark at the start.
+     *  If rescan is true, scanning starts back at the mark left last time. */
+    private static double rate(String text, Scanner s, boolean eol, boolean rescan) throws EOF {
+        if (rescan) s.abort();
+        s.mark();
+        long t0 = System.nanoTime();
+        while (s.hasNext()) {
+            if (eol) {
+                s.eol();
+            } else {
+                while (s.nextCodePoint() != '\n') { }
+            }
+        }
+        return text.length() * 1e3 / (System.nanoTime() - t0);
+    }
+}
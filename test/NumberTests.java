@@ -0,0 +1,251 @@
+import easyIO.EOF;
+import easyIO.Scanner;
+import easyIO.UnexpectedInput;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Tests of parsing numbers in Scanner */
+class NumberTests {
+
+    private static Scanner scanner(String input) {
+        return new Scanner(new StringReader(input), "in");
+    }
+
+    @Test
+    void testNextInt() throws UnexpectedInput {
+        Scanner s = scanner("0 42 -17 007 2147483647 -2147483648 123abc");
+        int[] expected = {0, 42, -17, 7, Integer.MAX_VALUE, Integer.MIN_VALUE, 123};
+        for (int e : expected) {
+            s.whitespace();
+            assertEquals(e, s.nextInt());
+        }
+        assertEquals('a', s.peek());
+    }
+
+    @Test
+    void testNextIntRejectsNonNumbers() {
+        for (String input : new String[]{"", "x", "-", "-x", "+1", " 1"}) {
+            Scanner s = scanner(input);
+            assertThrows(UnexpectedInput.class, s::nextInt, input);
+            assertEquals(input.isEmpty() ? -1 : input.charAt(0), s.peek(), input);
+        }
+    }
+
+    @Test
+    void testOverflowLeavesPosition() throws UnexpectedInput, EOF {
+        Scanner s = scanner("2147483648 -2147483649 99999999999999999999999");
+        assertThrows(NumberFormatException.class, s::nextInt);
+        assertEquals(1, s.location().column());
+        assertEquals(2147483648L, s.nextLong());
+        s.whitespace();
+        assertThrows(NumberFormatException.class, s::nextInt);
+        assertEquals(12, s.location().column());
+        assertEquals(-2147483649L, s.nextLong());
+        s.whitespace();
+        assertThrows(NumberFormatException.class, s::nextLong);
+        assertEquals(24, s.location().column());
+    }
+
+    @Test
+    void testNextLongAndShort() throws UnexpectedInput {
+        Scanner s = scanner("9223372036854775807 -9223372036854775808 32767 -32768 32768");
+        assertEquals(Long.MAX_VALUE, s.nextLong());
+        s.whitespace();
+        assertEquals(Long.MIN_VALUE, s.nextLong());
+        s.whitespace();
+        assertEquals(Short.MAX_VALUE, s.nextShort());
+        s.whitespace();
+        assertEquals(Short.MIN_VALUE, s.nextShort());
+        s.whitespace();
+        assertThrows(NumberFormatException.class, s::nextShort);
+        assertEquals(32768, s.nextInt());
+    }
+
+    @Test
+    void testUnsigned() throws UnexpectedInput {
+        Scanner s = scanner("4294967295 18446744073709551615 18446744073709551616 -1");
+        assertEquals(Integer.parseUnsignedInt("4294967295"), s.nextUnsignedInt());
+        s.whitespace();
+        assertEquals(Long.parseUnsignedLong("18446744073709551615"), s.nextUnsignedLong());
+        s.whitespace();
+        assertThrows(NumberFormatException.class, s::nextUnsignedLong);
+        assertThrows(NumberFormatException.class, s::nextUnsignedInt);
+        assertThrows(NumberFormatException.class, s::nextLong);
+        for (int i = 0; i < 20; i++) s.advance();
+        s.whitespace();
+        assertThrows(UnexpectedInput.class, s::nextUnsignedInt);
+        assertEquals(-1, s.nextInt());
+    }
+
+    @Test
+    void testNonAsciiDigits() throws UnexpectedInput {
+        Scanner s = scanner("١٢٣");
+        assertEquals(123, s.nextInt());
+    }
+
+    @Test
+    void testManyIntegers() throws UnexpectedInput {
+        StringBuilder b = new StringBuilder();
+        long sum = 0;
+        for (int i = -50000; i < 50000; i += 7) {
+            b.append(i * 31).append(i % 3 == 0 ? '\n' : ' ');
+            sum += i * 31;
+        }
+        Scanner s = scanner(b.toString());
+        long total = 0;
+        while (s.hasNext()) {
+            total += s.nextInt();
+            s.whitespace();
+        }
+        assertEquals(sum, total);
+    }
+
+    @Test
+    void testNextDouble() throws UnexpectedInput {
+        Scanner s = scanner("3.25 -0.5 .125 7. 1e3 2.5E-3 -6e+2 0 -0.0 1e400 1e-400 4.9e-324");
+        double[] expected = {3.25, -0.5, 0.125, 7.0, 1000.0, 0.0025, -600.0, 0.0, -0.0,
+                Double.POSITIVE_INFINITY, 0.0, Double.MIN_VALUE};
+        for (double e : expected) {
+            s.whitespace();
+            assertEquals(e, s.nextDouble());
+        }
+        assertFalse(s.hasNext());
+    }
+
+    @Test
+    void testExponentNeedsDigits() throws UnexpectedInput {
+        Scanner s = scanner("2em 3e-x");
+        assertEquals(2.0, s.nextDouble());
+        assertEquals('e', s.peek());
+        s.advance();
+        s.advance();
+        s.whitespace();
+        assertEquals(3.0, s.nextDouble());
+        assertEquals('e', s.peek());
+    }
+
+    @Test
+    void testNextDoubleRejectsNonNumbers() {
+        for (String input : new String[]{"", ".", "-", "-.e1", "e5", "x1"}) {
+            Scanner s = scanner(input);
+            assertThrows(UnexpectedInput.class, s::nextDouble, input);
+            assertEquals(input.isEmpty() ? -1 : input.charAt(0), s.peek(), input);
+        }
+    }
+
+    @Test
+    void testDoublesRoundLikeJdk() throws UnexpectedInput {
+        Random r = new Random(12);
+        String[] hard = {"9007199254740993", "2.2250738585072014E-308", "1.7976931348623157e308",
+                "1e23", "8.41e21", "123456789012345678901234567890", "0.1000000000000000055511151231257827"};
+        for (String h : hard) assertEquals(Double.parseDouble(h), scanner(h).nextDouble(), h);
+        for (int i = 0; i < 20000; i++) {
+            String t = Double.toString(Double.longBitsToDouble(r.nextLong() & 0x7FEFFFFFFFFFFFFFL));
+            assertEquals(Double.parseDouble(t), scanner(t).nextDouble(), t);
+            t = (r.nextInt(2000000) - 1000000) + "." + r.nextInt(1000000) + "e" + (r.nextInt(80) - 40);
+            assertEquals(Double.parseDouble(t), scanner(t).nextDouble(), t);
+        }
+    }
+
+    @Test
+    void testNextFloat() throws UnexpectedInput {
+        String[] inputs = {"16777217", "1.00000017881393432617187499", "3.4028235e38", "1.4e-45",
+                "-2.5", "0.1", "7.038531e-26", "1e39"};
+        for (String t : inputs) assertEquals(Float.parseFloat(t), scanner(t).nextFloat(), t);
+        Random r = new Random(13);
+        for (int i = 0; i < 20000; i++) {
+            String t = Float.toString(Float.intBitsToFloat(r.nextInt() & 0x7F7FFFFF));
+            assertEquals(Float.parseFloat(t), scanner(t).nextFloat(), t);
+            t = r.nextInt(100000000) + "e" + (r.nextInt(60) - 30);
+            assertEquals(Float.parseFloat(t), scanner(t).nextFloat(), t);
+        }
+    }
+
+    @Test
+    void testReadInts() throws UnexpectedInput {
+        Scanner s = scanner("1 2\n 3\t-4 5 6 7");
+        int[] a = new int[10];
+        assertEquals(3, s.readInts(a, 1, 3));
+        assertArrayEquals(new int[]{0, 1, 2, 3, 0, 0, 0, 0, 0, 0}, a);
+        assertEquals(4, s.readInts(a, 4, 6));
+        assertArrayEquals(new int[]{0, 1, 2, 3, -4, 5, 6, 7, 0, 0}, a);
+        assertFalse(s.hasNext());
+        assertThrows(IndexOutOfBoundsException.class, () -> s.readInts(a, 8, 3));
+    }
+
+    @Test
+    void testReadIntsStopsAtBadInput() throws UnexpectedInput, EOF {
+        Scanner s = scanner("10 20 x 30");
+        int[] a = new int[5];
+        assertEquals(2, s.readInts(a, 0, 5));
+        assertEquals('x', s.peek());
+        s = scanner("10 99999999999 30");
+        assertEquals(1, s.readInts(a, 0, 5));
+        assertEquals(4, s.location().column());
+        long[] b = new long[5];
+        assertEquals(2, s.readLongs(b, 0, 5));
+        assertEquals(99999999999L, b[0]);
+        assertEquals(30, b[1]);
+    }
+
+    @Test
+    void testReadDoubles() {
+        Scanner s = scanner("1.5 -2 3e2\n.25 end");
+        double[] a = new double[6];
+        assertEquals(4, s.readDoubles(a, 0, 6));
+        assertArrayEquals(new double[]{1.5, -2, 300, 0.25, 0, 0}, a);
+        assertEquals('e', s.peek());
+    }
+
+    @Test
+    void testStreams() {
+        Scanner s = scanner("1 2 3 4 ; 0.5 1.5 x");
+        assertEquals(10, s.ints().sum());
+        assertEquals(';', s.peek());
+        s.advance();
+        assertArrayEquals(new double[]{0.5, 1.5}, s.doubles().toArray());
+        assertEquals('x', s.peek());
+        assertEquals(2, scanner("5 6 7 8").ints().limit(2).count());
+    }
+
+    @Test
+    void testReadManyInts() {
+        int n = 200000;
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < n; i++) b.append(i * 7 - n).append(i % 10 == 9 ? "\n" : "  ");
+        int[] a = new int[n + 1];
+        assertEquals(n, scanner(b.toString()).readInts(a, 0, n + 1));
+        for (int i = 0; i < n; i++) assertEquals(i * 7 - n, a[i]);
+    }
+
+    @Test
+    void testTryVariants() throws EOF {
+        Scanner s = scanner("12 x 99999999999 -3.5 -");
+        assertTrue(s.tryInt());
+        assertEquals(12, s.intValue());
+        s.whitespace();
+        assertFalse(s.tryInt());
+        assertFalse(s.tryDouble());
+        assertFalse(s.tryInteger());
+        assertEquals('x', s.peek());
+        s.advance();
+        s.whitespace();
+        assertFalse(s.tryInt());
+        assertEquals(6, s.location().column());
+        assertTrue(s.tryLong());
+        assertEquals(99999999999L, s.longValue());
+        s.whitespace();
+        assertTrue(s.tryInteger());
+        assertFalse(s.tryInt());
+        assertTrue(s.tryDouble());
+        assertEquals(0.5, s.doubleValue());
+        s.whitespace();
+        assertFalse(s.tryInteger());
+        assertFalse(s.tryDouble());
+        assertEquals('-', s.peek());
+    }
+}
@@ -1,9 +1,11 @@
 import easyIO.BacktrackScanner;
+import easyIO.EOF;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.io.StringWriter;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -74,4 +76,99 @@ class ReaderTests {
             scanner.reset(); // should throw if mark() wasn't called
         });
     }
+
+    private static String longInput(String unit, int n) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < n; i++) b.append(i).append(unit);
+        return b.toString();
+    }
+
+    private static String readAll(BacktrackScanner s, int chunk) throws IOException {
+        StringBuilder result = new StringBuilder();
+        char[] buf = new char[chunk];
+        int n;
+        while ((n = s.read(buf, 0, chunk)) != -1) result.append(buf, 0, n);
+        return result.toString();
+    }
+
+    @Test
+    void testBulkReadLongInput() throws IOException {
+        String input = longInput(" abc\n", 5000);
+        BacktrackScanner s = new BacktrackScanner(new BacktrackScanner(new StringReader(input)));
+        assertEquals(input, readAll(s, 777));
+    }
+
+    @Test
+    void testBulkReadSplitsSurrogatePairs() throws IOException {
+        String input = longInput("\uD83D\uDE00\u00e9\u4e2d", 3000);
+        for (int chunk : new int[]{1, 2, 3, 1000}) {
+            BacktrackScanner s = new BacktrackScanner(new StringReader(input));
+            assertEquals(input, readAll(s, chunk));
+        }
+    }
+
+    @Test
+    void testNextDeliversLowSurrogate() throws EOF {
+        BacktrackScanner s = new BacktrackScanner(new StringReader("\uD83D\uDE00x"));
+        StringBuilder b = new StringBuilder();
+        while (s.hasNext()) b.append(s.next());
+        assertEquals("\uD83D\uDE00x", b.toString());
+    }
+
+    @Test
+    void testSkip() throws IOException {
+        assertEquals(7, scanner.skip(7));
+        assertEquals('w', scanner.read());
+        assertEquals(5, scanner.skip(100));
+        assertEquals(-1, scanner.read());
+
+        BacktrackScanner s = new BacktrackScanner(new StringReader("a\uD83D\uDE00b"));
+        assertEquals(2, s.skip(2));
+        assertEquals(0xDE00, s.read());
+        assertEquals('b', s.read());
+    }
+
+    @Test
+    void testTransferTo() throws IOException {
+        String input = longInput(" \u00e9\uD83D\uDE00\n", 4000);
+        BacktrackScanner s = new BacktrackScanner(new StringReader(input));
+        assertEquals('0', s.read());
+        StringWriter w = new StringWriter();
+        assertEquals(input.length() - 1, s.transferTo(w));
+        assertEquals(input.substring(1), w.toString());
+    }
+
+    @Test
+    void testBulkReadKeepsMarks() throws IOException {
+        String input = longInput(",", 2000);
+        BacktrackScanner s = new BacktrackScanner(new StringReader(input));
+        s.mark();
+        assertEquals(input, readAll(s, 100));
+        s.abort();
+        assertEquals(input, readAll(s, 4096));
+    }
+
+    @Test
+    void testAdvancePastSupplementaryCharacter() throws IOException {
+        BacktrackScanner s = new BacktrackScanner(new StringReader("\uD83D\uDE00x\uD83D\uDE01"));
+        s.advance();
+        assertEquals('x', s.read());
+        assertEquals(0xD83D, s.read());
+        s.advance();
+        assertFalse(s.hasNext());
+    }
+
+    @Test
+    void testReadThenPeekAndNextCodePoint() throws IOException, EOF {
+        BacktrackScanner s = new BacktrackScanner(new StringReader("\uD83D\uDE00x\uD83D\uDE01y"));
+        assertEquals(0xD83D, s.read());
+        assertEquals(0xDE00, s.peek());
+        assertEquals(0xDE00, s.nextCodePoint());
+        assertEquals('x', s.peek());
+        assertEquals('x', s.read());
+        assertEquals(0xD83D, s.read());
+        assertEquals(0xDE01, s.nextCodePointOrEOF());
+        assertEquals('y', s.nextCodePoint());
+        assertEquals(-1, s.peek());
+    }
 }
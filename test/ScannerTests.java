@@ -0,0 +1,507 @@
+import easyIO.BacktrackScanner;
+import easyIO.BacktrackScanner.Location;
+import easyIO.BufferPool;
+import easyIO.CharPredicate;
+import easyIO.CharSequenceSource;
+import easyIO.EOF;
+import easyIO.Regex;
+import easyIO.Scanner;
+import easyIO.TokenSpan;
+import easyIO.UnexpectedInput;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Tests of position tracking and parsing in Scanner */
+class ScannerTests {
+
+    /** Describe the position of every remaining character of s. */
+    private static String positions(BacktrackScanner s) throws EOF {
+        StringBuilder b = new StringBuilder();
+        while (s.hasNext()) {
+            Location loc = s.location();
+            b.append(loc.lineNo()).append(':').append(loc.column()).append(' ');
+            s.nextCodePoint();
+        }
+        return b.toString().trim();
+    }
+
+    @Test
+    void testLineAndColumn() throws EOF {
+        Scanner s = new Scanner(new StringReader("ab\ncd😀e\n\nx"), "in");
+        assertEquals("1:1 1:2 2:0 2:1 2:2 2:3 2:4 3:0 4:0 4:1", positions(s));
+    }
+
+    @Test
+    void testMarkLocationAfterBacktracking() throws EOF {
+        Scanner s = new Scanner(new StringReader("one\ntwo\nthree"), "in");
+        s.mark();
+        for (int i = 0; i < 6; i++) s.nextCodePoint();
+        s.mark();
+        for (int i = 0; i < 4; i++) s.nextCodePoint();
+        assertEquals("o\nth", s.getToken());
+        Location m = s.getMarkLocation();
+        assertEquals(2, m.lineNo());
+        assertEquals(3, m.column());
+        s.accept();
+        s.abort();
+        assertEquals(1, s.location().lineNo());
+        assertEquals(1, s.location().column());
+    }
+
+    @Test
+    void testIncludedSourcePositions() throws EOF {
+        Scanner s = new Scanner(new StringReader("ab\ncd"), "outer");
+        s.nextCodePoint();
+        s.peek();
+        s.includeSource(new StringReader("x\ny"), "inner");
+        StringBuilder b = new StringBuilder();
+        while (s.hasNext()) {
+            Location loc = s.location();
+            b.append(s.currentSource().name().charAt(0)).append(loc.lineNo())
+             .append(':').append(loc.column()).append(' ');
+            s.nextCodePoint();
+        }
+        assertEquals("i1:1 i2:0 i2:1 o1:2 o2:0 o2:1 o2:2", b.toString().trim());
+    }
+
+    @Test
+    void testNestedIncludes() throws EOF {
+        Scanner s = new Scanner(new StringReader("a\n".repeat(3000)), "outer");
+        StringBuilder b = new StringBuilder();
+        int line = 1;
+        while (s.hasNext()) {
+            int c = s.peek();
+            if (c == 'a' || c == '\n') {
+                assertEquals("outer", s.source());
+                assertEquals(c == 'a' ? line : line + 1, s.lineNo());
+            } else {
+                assertEquals(c == '<' || c == '>' ? "inner" : "macro", s.source());
+            }
+            if (c == 'a' && line % 100 == 50) {
+                s.mark();
+                for (int i = 0; i < 5; i++) s.nextCodePoint();
+                s.abort();
+            }
+            s.nextCodePoint();
+            b.append((char) c);
+            if (c == '\n') line++;
+            if (c == 'a') s.includeSource(new StringReader("(m)"), "macro");
+            if (c == 'm') s.includeSource(new StringReader("<>"), "inner");
+        }
+        assertEquals("a(m<>)\n".repeat(3000), b.toString());
+    }
+
+    /** A source that reports its own positions, starting at line 10. */
+    private static class NumberedSource implements BacktrackScanner.Source {
+        private final String text;
+        private int i = 0, line = 10, col = 0;
+        NumberedSource(String text) { this.text = text; }
+        public String name() { return "numbered"; }
+        public int lineNo() { return line; }
+        public int column() { return col; }
+        public Location read() {
+            if (i == text.length()) return null;
+            char c = text.charAt(i++);
+            if (c == '\n') { line++; col = 0; } else col++;
+            return new Location(this, line, col, c);
+        }
+        public void close() {}
+    }
+
+    @Test
+    void testGenericSourcePositions() throws EOF {
+        BacktrackScanner s = new BacktrackScanner(new NumberedSource("ab\nc"));
+        assertEquals("10:1 10:2 11:0 11:1", positions(s));
+    }
+
+    /** A reader that delivers at most three chars per read. */
+    private static class TrickleReader extends StringReader {
+        TrickleReader(String s) { super(s); }
+        @Override public int read(char[] cbuf, int off, int len) throws IOException {
+            return super.read(cbuf, off, Math.min(len, 3));
+        }
+    }
+
+    @Test
+    void testSurrogatesAcrossReads() throws EOF {
+        String input = "ab😀c😀😀d\ud800";
+        Scanner s = new Scanner(new TrickleReader(input), "trickle");
+        StringBuilder b = new StringBuilder();
+        while (s.hasNext()) b.appendCodePoint(s.nextCodePoint());
+        assertEquals(input, b.toString());
+        assertEquals(input.codePointCount(0, input.length()), s.inputPosition());
+    }
+
+    @Test
+    void testWideCharacterInsideToken() throws EOF {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 3000; i++) input.append((char) ('a' + i % 26)).append('é');
+        input.append("中文").append("xyz");
+        Scanner s = new Scanner(new TrickleReader(input.toString()), "mixed");
+        s.mark();
+        while (s.hasNext()) s.nextCodePoint();
+        assertEquals(input.toString(), s.getToken());
+        s.abort();
+        assertEquals('a', s.peek());
+    }
+
+    @Test
+    void testTokensAcrossBufferWrap() throws EOF {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 5000; i++) input.append(i % 7 == 0 ? "中" : "x").append(i).append(' ');
+        Scanner s = new Scanner(new TrickleReader(input.toString()), "words");
+        for (int i = 0; i < 5000; i++) {
+            s.mark();
+            while (s.peek() != ' ') s.nextCodePoint();
+            assertEquals((i % 7 == 0 ? "中" : "x") + i, s.getToken());
+            s.accept();
+            s.advance();
+        }
+        assertFalse(s.hasNext());
+    }
+
+    @Test
+    void testBufferShrinksAfterDeepMark() throws EOF {
+        String input = "y".repeat(200_000);
+        Scanner s = new Scanner(new StringReader(input), "deep");
+        s.setRetainedCapacity(4096);
+        s.mark();
+        for (int i = 0; i < 150_000; i++) s.nextCodePoint();
+        assertTrue(s.windowSize() >= 150_000);
+        assertTrue(s.bufferCapacity() >= 150_000);
+        s.accept();
+        while (s.hasNext()) s.nextCodePoint();
+        assertTrue(s.bufferCapacity() <= 4096);
+        assertTrue(s.highWaterMark() >= 150_000);
+    }
+
+    @Test
+    void testSpillDeepMark() throws EOF, IOException {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 30_000; i++) input.append(i).append(i % 100 == 0 ? "\n" : i % 3 == 0 ? "é " : "中 ");
+        String text = input.toString();
+        Scanner s = new Scanner(new StringReader(text), "spill");
+        s.setSpillLimit(5000);
+        s.nextCodePoint();
+        s.mark();
+        for (int i = 1; i < text.length() - 10; i++) s.nextCodePoint();
+        assertTrue(s.bufferCapacity() <= 4 * 5000);
+        assertEquals(text.substring(1, text.length() - 10), s.getToken());
+        assertEquals(2, s.getMarkLocation().lineNo());
+        s.abort();
+        assertEquals(1, s.inputPosition());
+        StringBuilder rest = new StringBuilder();
+        while (s.hasNext()) rest.appendCodePoint(s.nextCodePoint());
+        assertEquals(text.substring(1), rest.toString());
+        s.close();
+    }
+
+    @Test
+    void testIncludeIntoSpilledInput() throws EOF, IOException {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 30_000; i++) input.append((char) ('a' + i % 26));
+        String text = input.toString();
+        Scanner s = new Scanner(new StringReader(text), "spill");
+        s.setSpillLimit(5000);
+        s.nextCodePoint();
+        s.mark();
+        for (int i = 1; i < 20_000; i++) s.nextCodePoint();
+        s.abort();
+        s.includeSource(new StringReader("XYZ"), "include");
+        StringBuilder rest = new StringBuilder();
+        while (s.hasNext()) rest.appendCodePoint(s.nextCodePoint());
+        assertEquals("XYZ" + text.substring(1), rest.toString());
+        s.close();
+    }
+
+    @Test
+    void testLongInputPositions() throws EOF, IOException {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 1000; i++) input.append("line ").append(i).append('\n');
+        Scanner s = new Scanner(new StringReader(input.toString()), "long");
+        for (int i = 0; i < 1000; i++) {
+            s.mark();
+            s.eol();
+            assertEquals(i + 1, s.getMarkLocation().lineNo());
+            s.accept();
+        }
+        assertFalse(s.hasNext());
+        s.close();
+    }
+
+    @Test
+    void testCharPredicates() {
+        for (int c = -1; c < 0x3000; c++) {
+            assertEquals(Character.isWhitespace(c), CharPredicate.WHITESPACE.test(c));
+            assertEquals(Character.isDigit(c), CharPredicate.DIGIT.test(c));
+            assertEquals(Character.isAlphabetic(c) || c == '_', CharPredicate.IDENTIFIER_START.test(c));
+        }
+        CharPredicate vowel = CharPredicate.tabulated(c -> "aeioué".indexOf(c) >= 0);
+        assertTrue(vowel.test('e'));
+        assertTrue(vowel.test('é'));
+        assertFalse(vowel.test('x'));
+    }
+
+    @Test
+    void testSkipWhileAcrossRefills() throws EOF {
+        String spaces = " \t\n".repeat(3000);
+        Scanner s = new Scanner(new StringReader(spaces + "x"), "in");
+        assertEquals(spaces.length(), s.skipWhile(CharPredicate.WHITESPACE));
+        assertEquals('x', s.peek());
+        assertEquals(3001, s.location().lineNo());
+        assertEquals(0, s.skipWhile(CharPredicate.WHITESPACE));
+        s.advance();
+        assertEquals(0, s.skipWhile(c -> true));
+    }
+
+    @Test
+    void testScanWhile() {
+        Scanner s = new Scanner(new StringReader("héllo😀wörld!"), "in");
+        assertEquals("héllo", s.scanWhile(CharPredicate.IDENTIFIER_PART));
+        assertEquals("😀", s.scanWhile(c -> c > 0xFFFF));
+        assertEquals("wörld", s.scanWhile(Character::isLetter));
+        assertEquals('!', s.peek());
+    }
+
+    @Test
+    void testTableDrivenScanning() throws UnexpectedInput {
+        Scanner s = new Scanner(new StringReader("  \t _név2 x9 ; rest\n\t \fnext\n"), "in");
+        s.whitespace();
+        assertEquals("_név2", s.nextIdentifier());
+        s.whitespace();
+        assertEquals("x9", s.nextIdentifier());
+        s.trailingWhitespace();
+        assertEquals(';', s.peek());
+        assertThrows(UnexpectedInput.class, s::identifier);
+        s.eol();
+        s.trailingWhitespace();
+        assertEquals('\f', s.peek());
+        s.eol();
+        assertFalse(s.hasNext());
+    }
+
+    /** The text before each occurrence of a delimiter in text, found by skipUntilAny. */
+    private static String splitBySkipping(String text, String delimiters) throws EOF {
+        BacktrackScanner s = new BacktrackScanner(new StringReader(text));
+        StringBuilder b = new StringBuilder();
+        while (s.hasNext()) {
+            s.mark();
+            int n = s.skipUntilAny(delimiters);
+            String token = s.getToken();
+            assertEquals(token.codePointCount(0, token.length()), n);
+            b.append(token).append('|');
+            s.accept();
+            if (s.hasNext()) s.nextCodePoint();
+        }
+        return b.toString();
+    }
+
+    private static String splitByIndex(String text, String delimiters) {
+        StringBuilder b = new StringBuilder();
+        int start = 0;
+        for (int i = 0; i < text.length(); i = text.offsetByCodePoints(i, 1)) {
+            if (delimiters.indexOf(text.codePointAt(i)) >= 0) {
+                b.append(text, start, i).append('|');
+                start = text.offsetByCodePoints(i, 1);
+            }
+        }
+        if (start < text.length()) b.append(text.substring(start)).append('|');
+        return b.toString();
+    }
+
+    @Test
+    void testSkipUntilMatchesIndexOf() throws EOF {
+        java.util.Random r = new java.util.Random(5);
+        String alphabet = "abcdefgh,;\n\u00e9\u00ff";
+        for (int t = 0; t < 200; t++) {
+            StringBuilder b = new StringBuilder();
+            int len = r.nextInt(3000);
+            for (int i = 0; i < len; i++) {
+                b.append(r.nextInt(20) == 0 ? alphabet.charAt(r.nextInt(alphabet.length())) : 'x');
+            }
+            if (t % 4 == 0) b.append("\u4e2d\uD83D\uDE00x,y");
+            String text = b.toString();
+            for (String d : new String[]{"\n", ",", ",;", "\u00ff\n", "\u00e9,;\n", "\u4e2d", "\uD83D\uDE00,", "abcdef"}) {
+                assertEquals(splitByIndex(text, d), splitBySkipping(text, d), d);
+            }
+        }
+    }
+
+    @Test
+    void testNextLine() throws UnexpectedInput {
+        String longLine = "x".repeat(10000);
+        Scanner s = new Scanner(new StringReader("first\n" + longLine + "\n\nlast"), "in");
+        assertEquals("first\n", s.nextLine());
+        assertEquals(longLine + "\n", s.nextLine());
+        assertEquals("\n", s.nextLine());
+        assertEquals("last", s.nextLine());
+        assertFalse(s.hasNext());
+    }
+
+    @Test
+    void testParseToCharDelimiter() {
+        Scanner s = new Scanner(new StringReader("a,b;c  d"), "in");
+        assertEquals("a", Regex.parseToDelimiter(s, Regex.anyChar(",;")));
+        assertEquals("b", Regex.parseToDelimiter(s, Regex.anyChar(",;")));
+        assertEquals("c", Regex.parseToDelimiter(s, Regex.whitespace()));
+        assertEquals("", Regex.parseToDelimiter(s, Regex.whitespace()));
+        assertEquals("d", Regex.parseToDelimiter(s, Regex.anyChar(",")));
+        assertFalse(s.hasNext());
+    }
+
+    @Test
+    void testTokenView() throws IOException, UnexpectedInput {
+        Scanner s = new Scanner(new StringReader("hello wörld 😀x -42 3.5e2 9999999999"), "in");
+        String[] words = {"hello", "wörld", "😀x"};
+        for (String w : words) {
+            s.mark();
+            s.skipWhile(c -> c != ' ');
+            TokenSpan t = s.tokenView();
+            assertEquals(w.length(), t.length());
+            assertEquals(w.codePointCount(0, w.length()), t.codePointCount());
+            assertTrue(t.contentEquals(w));
+            assertFalse(t.contentEquals(w + "!"));
+            assertFalse(t.contentEquals("x" + w.substring(1)));
+            assertEquals(w.hashCode(), t.hashCode());
+            assertEquals(w, t.toString());
+            assertEquals(w.charAt(w.length() - 1), t.charAt(w.length() - 1));
+            assertEquals(w.substring(1), t.subSequence(1, w.length()).toString());
+            StringBuilder b = new StringBuilder("<");
+            t.appendTo(b);
+            StringWriter sw = new StringWriter();
+            t.appendTo(sw);
+            assertEquals("<" + w, b.toString());
+            assertEquals(w, sw.toString());
+            s.accept();
+            s.whitespace();
+        }
+        s.mark();
+        s.skipWhile(c -> c != ' ');
+        assertEquals(-42, s.tokenView().parseInt());
+        s.accept();
+        s.whitespace();
+        s.mark();
+        s.skipWhile(c -> c != ' ');
+        assertEquals(350.0, s.tokenView().parseDouble());
+        assertThrows(NumberFormatException.class, () -> s.tokenView().parseInt());
+        s.accept();
+        s.whitespace();
+        s.mark();
+        s.skipWhile(c -> c != ' ');
+        TokenSpan t = s.tokenView();
+        assertThrows(NumberFormatException.class, t::parseInt);
+        assertEquals(9999999999L, t.parseLong());
+        assertEquals(9999999999.0, t.parseDouble());
+        s.accept();
+    }
+
+    @Test
+    void testTokenViewParsesLikeJdk() {
+        String[] numbers = {"0", "+7", "-9223372036854775808", "9223372036854775807", "9223372036854775808",
+                "-", "", "1_0", "12a", "1.5", "-0.0", "1e400", ".5", "5.", "1e", "Infinity", "0x1p3",
+                "2.5f", " 1", "123456789012345678901234", "4.9e-324"};
+        for (String n : numbers) {
+            Scanner s = new Scanner(new StringReader(n), "in");
+            s.mark();
+            s.skipWhile(c -> true);
+            TokenSpan t = s.tokenView();
+            assertEquals(outcome(() -> Long.parseLong(n)), outcome(t::parseLong), n);
+            assertEquals(outcome(() -> Double.parseDouble(n)), outcome(t::parseDouble), n);
+        }
+    }
+
+    /** The result of f, or the class of the exception it throws. */
+    private static String outcome(java.util.concurrent.Callable<?> f) {
+        try {
+            return String.valueOf(f.call());
+        } catch (Exception e) {
+            return e.getClass().getName();
+        }
+    }
+
+    @Test
+    void testTryVariants() throws EOF {
+        Scanner s = new Scanner(new StringReader("abc 1\r\n\r x\n"), "in");
+        assertEquals("abc", s.tryIdentifier());
+        assertNull(s.tryIdentifier());
+        assertFalse(s.tryNewline());
+        s.whitespace();
+        assertNull(s.tryIdentifier());
+        assertEquals('1', s.nextCodePointOrEOF());
+        assertTrue(s.tryNewline());
+        assertFalse(s.tryNewline());
+        assertEquals('\r', s.peek());
+        s.advance();
+        s.whitespace();
+        assertEquals("x", s.tryIdentifier());
+        assertTrue(s.tryNewline());
+        assertEquals(-1, s.nextCodePointOrEOF());
+        assertThrows(EOF.class, s::nextCodePoint);
+    }
+
+    @Test
+    void testReuse() throws IOException, UnexpectedInput, EOF {
+        Scanner s = new Scanner(new StringReader("one two\nthree"), "first");
+        s.mark();
+        assertEquals("one", s.nextIdentifier());
+        s.mark();
+        int capacity = s.bufferCapacity();
+        s.reuse(new CharSequenceSource("x\ny 😀", "second"));
+        assertEquals(0, s.depth());
+        assertEquals(capacity, s.bufferCapacity());
+        assertEquals("x", s.nextIdentifier());
+        assertEquals("second", s.source());
+        assertEquals("2:0 2:1 2:2 2:3", positions(s));
+        for (int i = 0; i < 100; i++) {
+            String text = "message " + i + (i % 3 == 0 ? " é😀" : "") + "\n";
+            s.reuse(new CharSequenceSource(text, "m" + i));
+            assertEquals(text, s.nextLine());
+            assertEquals(2, s.lineNo());
+            assertFalse(s.hasNext());
+        }
+        s.reuse(null);
+        assertFalse(s.hasNext());
+        s.close();
+    }
+
+    @Test
+    void testBufferPool() throws IOException, UnexpectedInput {
+        BufferPool pool = new BufferPool();
+        String text = "word ".repeat(2000);
+        for (int i = 0; i < 10; i++) {
+            Scanner s = new Scanner(new CharSequenceSource(text + i, "m"));
+            s.setBufferPool(pool);
+            s.mark();
+            s.skipWhile(c -> true);
+            assertEquals(text + i, s.getToken());
+            s.accept();
+            s.close();
+        }
+        assertTrue(pool.reuses() > pool.allocations(), pool.reuses() + " " + pool.allocations());
+        assertSame(BufferPool.perThread(), BufferPool.perThread());
+    }
+
+    @Test
+    void testCharSequenceLatin1() throws EOF {
+        BufferPool pool = new BufferPool();
+        String text = "naïve café\n".repeat(300);
+        Scanner s = new Scanner(new CharSequenceSource(text, "latin"));
+        s.setBufferPool(pool);
+        StringBuilder b = new StringBuilder();
+        while (s.hasNext()) b.appendCodePoint(s.nextCodePoint());
+        assertEquals(text, b.toString());
+        // Latin-1 text goes straight into the byte buffer, which is all that is taken.
+        assertEquals(1, pool.allocations() + pool.reuses());
+        s.reuse(new CharSequenceSource(text + "中文\n" + text, "mixed"));
+        b.setLength(0);
+        while (s.peek() != '中') b.appendCodePoint(s.nextCodePoint());
+        assertEquals(301, s.lineNo());
+        while (s.hasNext()) b.appendCodePoint(s.nextCodePoint());
+        assertEquals(text + "中文\n" + text, b.toString());
+    }
+}
@@ -1,11 +1,10 @@
 import easyIO.BacktrackScanner;
-
-import java.io.InputStreamReader;
+import easyIO.InputStreamSource;
 
 class Test1 {
     public static void main(String[] args) {
         BacktrackScanner sc = new BacktrackScanner();
-        sc.appendSource(new InputStreamReader(System.in), "System.in");
+        sc.appendSource(new InputStreamSource(System.in, "System.in"));
 
         try {
             sc.mark();
@@ -0,0 +1,209 @@
+package easyIO;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Tests of the byte- and char-level input sources */
+class SourceTests {
+    private static final String SAMPLE = "plain ascii\nLatin-1: café naïve\n"
+            + "Greek: αβγ, CJK: 中文\nEmoji: 😀🎉 end\n";
+
+    /** Everything s delivers, as a string. */
+    private static String contents(BacktrackScanner s) throws EOF {
+        StringBuilder b = new StringBuilder();
+        while (s.hasNext()) b.appendCodePoint(s.nextCodePoint());
+        return b.toString();
+    }
+
+    private static Path tempFile(byte[] contents) throws IOException {
+        Path p = Files.createTempFile("easyIO", ".txt");
+        p.toFile().deleteOnExit();
+        Files.write(p, contents);
+        return p;
+    }
+
+    @Test
+    void testMappedFile() throws IOException, EOF {
+        Path p = tempFile(SAMPLE.getBytes(StandardCharsets.UTF_8));
+        try (BacktrackScanner s = new BacktrackScanner(new MappedFileSource(p))) {
+            assertEquals(SAMPLE, contents(s));
+        }
+    }
+
+    @Test
+    void testMappedFileSmallWindows() throws IOException, EOF {
+        Path p = tempFile(SAMPLE.getBytes(StandardCharsets.UTF_8));
+        for (int w = 4; w < 9; w++) {
+            try (BacktrackScanner s = new BacktrackScanner(new MappedFileSource(p, "small", w))) {
+                assertEquals(SAMPLE, contents(s));
+            }
+        }
+    }
+
+    @Test
+    void testMappedFilePositions() throws IOException, EOF {
+        Path p = tempFile(SAMPLE.getBytes(StandardCharsets.UTF_8));
+        try (BacktrackScanner s = new BacktrackScanner(new MappedFileSource(p, "sample", 5))) {
+            while (s.peek() != 'β') s.advance();
+            BacktrackScanner.Location loc = s.location();
+            assertEquals(3, loc.lineNo());
+            assertEquals(9, loc.column());
+        }
+    }
+
+    @Test
+    void testMalformedUtf8() throws IOException, EOF {
+        byte[] bad = { 'a', (byte) 0xC3, 'b', (byte) 0xFF, (byte) 0xE2, (byte) 0x82 };
+        String expected = new String(bad, StandardCharsets.UTF_8);
+        Path p = tempFile(bad);
+        try (BacktrackScanner s = new BacktrackScanner(new MappedFileSource(p))) {
+            assertEquals(expected, contents(s));
+        }
+    }
+
+    /** Malformed sequences that the JDK replaces one way or another, each between
+     *  ASCII characters and also cut off at the end of the input. */
+    private static final byte[][] MALFORMED = {
+        { (byte) 0xC0, (byte) 0x80 },                           // overlong
+        { (byte) 0xC1, (byte) 0xBF },
+        { (byte) 0xE0, (byte) 0x80, (byte) 0x80 },
+        { (byte) 0xE0, (byte) 0x9F, (byte) 0xBF },
+        { (byte) 0xF0, (byte) 0x8F, (byte) 0xBF, (byte) 0xBF },
+        { (byte) 0xED, (byte) 0xA0, (byte) 0x80 },              // surrogate
+        { (byte) 0xF4, (byte) 0x90, (byte) 0x80, (byte) 0x80 }, // above U+10FFFF
+        { (byte) 0xF5, (byte) 0x80, (byte) 0x80, (byte) 0x80 },
+        { (byte) 0xF8, (byte) 0x88, (byte) 0x80, (byte) 0x80, (byte) 0x80 },
+        { (byte) 0xE2, (byte) 0x82 },                           // truncated
+        { (byte) 0xF0, (byte) 0x9F, (byte) 0x98 },
+        { (byte) 0xF0, (byte) 0x9F, 'x', (byte) 0x80 },
+    };
+
+    /** The byte sequences of MALFORMED, as they appear in the tests. */
+    private static List<byte[]> malformedInputs() {
+        List<byte[]> inputs = new ArrayList<>();
+        for (byte[] m : MALFORMED) {
+            byte[] b = new byte[m.length + 2];
+            b[0] = 'a';
+            System.arraycopy(m, 0, b, 1, m.length);
+            b[b.length - 1] = 'z';
+            inputs.add(b);
+            inputs.add(Arrays.copyOf(b, b.length - 1));
+        }
+        return inputs;
+    }
+
+    @Test
+    void testMalformedUtf8LikeJdk() throws IOException, EOF {
+        for (byte[] b : malformedInputs()) {
+            String expected = new String(b, StandardCharsets.UTF_8);
+            Path p = tempFile(b);
+            try (BacktrackScanner s = new BacktrackScanner(new MappedFileSource(p))) {
+                assertEquals(expected, contents(s));
+            }
+        }
+    }
+
+    @Test
+    void testEmptyFile() throws IOException {
+        Path p = tempFile(new byte[0]);
+        try (BacktrackScanner s = new BacktrackScanner(new MappedFileSource(p))) {
+            assertFalse(s.hasNext());
+        }
+    }
+
+    /** A stream that delivers at most n bytes per read. */
+    private static InputStream trickle(byte[] b, int n) {
+        return new ByteArrayInputStream(b) {
+            @Override public synchronized int read(byte[] dst, int off, int len) {
+                return super.read(dst, off, Math.min(len, n));
+            }
+        };
+    }
+
+    @Test
+    void testInputStreamUtf8() throws EOF {
+        byte[] b = SAMPLE.getBytes(StandardCharsets.UTF_8);
+        for (int n = 1; n < 6; n++) {
+            BacktrackScanner s = new BacktrackScanner(new InputStreamSource(trickle(b, n), "in"));
+            assertEquals(SAMPLE, contents(s));
+        }
+        assertEquals(SAMPLE, contents(new Scanner(new ByteArrayInputStream(b), "in")));
+    }
+
+    @Test
+    void testInputStreamMalformed() throws EOF {
+        byte[] bad = { 'a', (byte) 0xF0, (byte) 0x9F, 'b', (byte) 0x80, (byte) 0xF0, (byte) 0x9F };
+        String expected = new String(bad, StandardCharsets.UTF_8);
+        assertEquals(expected, contents(new BacktrackScanner(new InputStreamSource(trickle(bad, 2), "in"))));
+    }
+
+    @Test
+    void testInputStreamMalformedLikeReader() throws IOException, EOF {
+        for (byte[] b : malformedInputs()) {
+            StringBuilder expected = new StringBuilder();
+            Reader r = new InputStreamReader(new ByteArrayInputStream(b), StandardCharsets.UTF_8);
+            for (int c = r.read(); c >= 0; c = r.read()) expected.append((char) c);
+            for (int n = 1; n < 5; n++) {
+                BacktrackScanner s = new BacktrackScanner(new InputStreamSource(trickle(b, n), "in"));
+                assertEquals(expected.toString(), contents(s));
+            }
+        }
+    }
+
+    @Test
+    void testInputStreamSingleByteCharsets() throws EOF {
+        String latin = "café\nnaïve ÿ";
+        byte[] b = latin.getBytes(StandardCharsets.ISO_8859_1);
+        assertEquals(latin, contents(new BacktrackScanner(
+                new InputStreamSource(new ByteArrayInputStream(b), "in", StandardCharsets.ISO_8859_1))));
+        assertEquals(new String(b, StandardCharsets.US_ASCII), contents(new BacktrackScanner(
+                new InputStreamSource(new ByteArrayInputStream(b), "in", StandardCharsets.US_ASCII))));
+    }
+
+    @Test
+    void testInputStreamPositions() throws EOF {
+        byte[] b = SAMPLE.getBytes(StandardCharsets.UTF_8);
+        BacktrackScanner s = new BacktrackScanner(new InputStreamSource(trickle(b, 3), "in"));
+        while (s.peek() != 0x1F600) s.advance();
+        assertEquals(4, s.location().lineNo());
+        assertEquals(8, s.location().column());
+    }
+
+    @Test
+    void testCharSequences() throws EOF {
+        assertEquals(SAMPLE, contents(new BacktrackScanner(new CharSequenceSource(SAMPLE, "s"))));
+        StringBuilder b = new StringBuilder(SAMPLE);
+        assertEquals(SAMPLE, contents(new BacktrackScanner(new CharSequenceSource(b, "b"))));
+        char[] a = ("xx" + SAMPLE + "yy").toCharArray();
+        assertEquals(SAMPLE, contents(new BacktrackScanner(new CharSequenceSource(a, 2, SAMPLE.length(), "a"))));
+        assertEquals("", contents(new BacktrackScanner(new CharSequenceSource("", "empty"))));
+    }
+
+    @Test
+    void testCharSequenceBacktracking() throws EOF {
+        BacktrackScanner s = new BacktrackScanner(new CharSequenceSource("abc\ndef", "s"));
+        s.mark();
+        s.nextCodePoint();
+        s.mark();
+        for (int i = 0; i < 4; i++) s.nextCodePoint();
+        assertEquals("bc\nd", s.getToken());
+        assertEquals(2, s.location().lineNo());
+        s.abort();
+        assertEquals('b', s.peek());
+        s.accept();
+        assertEquals(1, s.location().lineNo());
+    }
+}
@@ -0,0 +1,75 @@
+package easyIO;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Tests of SymbolTable and identifier interning in Scanner */
+class SymbolTableTests {
+
+    @Test
+    void testInternAndIds() {
+        SymbolTable t = new SymbolTable();
+        String a = t.intern(new StringBuilder("alpha"));
+        assertSame(a, t.intern("alpha"));
+        assertEquals(0, t.id("alpha"));
+        assertEquals(1, t.id("beta"));
+        assertEquals("beta", t.name(1));
+        assertEquals(2, t.size());
+        assertEquals(2, t.misses());
+        assertEquals(2, t.hits());
+        assertThrows(IndexOutOfBoundsException.class, () -> t.name(2));
+    }
+
+    @Test
+    void testManySymbols() {
+        SymbolTable t = new SymbolTable();
+        for (int i = 0; i < 10000; i++) assertEquals(i, t.id("s" + i));
+        for (int i = 0; i < 10000; i++) assertEquals(i, t.id("s" + i));
+        assertEquals(10000, t.size());
+        assertEquals(10000, t.hits());
+        for (int i = 0; i < 10000; i++) assertEquals("s" + i, t.name(i));
+    }
+
+    @Test
+    void testSizeBound() {
+        SymbolTable t = new SymbolTable(2);
+        assertEquals(0, t.id("a"));
+        assertEquals(1, t.id("b"));
+        assertEquals(-1, t.id("c"));
+        assertEquals("c", t.intern("c"));
+        assertEquals(2, t.size());
+        assertEquals(0, t.id("a"));
+    }
+
+    @Test
+    void testScannerInterning() throws UnexpectedInput {
+        Scanner s = new Scanner(new StringReader("foo bar foo x😀 baz bar foo x😀"), "in");
+        SymbolTable t = new SymbolTable();
+        s.setSymbolTable(t);
+        String first = s.nextIdentifier();
+        s.whitespace();
+        assertEquals("bar", s.nextIdentifier());
+        s.whitespace();
+        assertSame(first, s.nextIdentifier());
+        s.whitespace();
+        assertEquals("x", s.nextIdentifier());
+        s.advance();
+        s.whitespace();
+        int[] ids = new int[4];
+        for (int i = 0; i < 4; i++) {
+            ids[i] = s.nextSymbol();
+            s.whitespace();
+            if (s.peek() == 0x1F600) s.advance();
+            s.whitespace();
+        }
+        assertArrayEquals(new int[]{3, 1, 0, 2}, ids);
+        assertEquals(4, t.size());
+        assertEquals("baz", t.name(3));
+        assertFalse(s.hasNext());
+        s.setSymbolTable(null);
+        assertThrows(IllegalStateException.class, s::nextSymbol);
+    }
+}
@@ -1,6 +1,7 @@
 package easyIO.regexp;
 
 import easyIO.BacktrackScanner;
+import easyIO.CharSequenceSource;
 import easyIO.EOF;
 import org.junit.jupiter.api.Test;
 
@@ -11,12 +12,15 @@ import static easyIO.StdIO.readln;
 import static easyIO.regexp.AlternationRE.alt;
 import static easyIO.regexp.Capture.capture;
 import static easyIO.regexp.CharacterClass.anyChar;
+import static easyIO.regexp.CharacterClass.excludeRange;
 import static easyIO.regexp.CharacterClass.range;
 import static easyIO.regexp.Concat.concat;
 import static easyIO.regexp.Parser.parse;
 import static easyIO.regexp.StarRE.star;
 import static easyIO.regexp.StringRE.string;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 public class SimpleTests {
@@ -324,4 +328,252 @@ public class SimpleTests {
             fail();
         }
     }
+    @Test void test31() {
+        // As in test16, the derivatives of (a|aa)* reach a fixed point after two a's.
+        DFA d = star(alt(string("a"), string("aa"))).dfa();
+        assertEquals(4, d.size());
+        int q = d.step(d.step(d.start(), 'a'), 'a');
+        assertEquals(q, d.step(q, 'a'));
+        assertEquals(DFA.DEAD, d.step(q, 'b'));
+        assertTrue(d.nullable(q));
+        assertFalse(d.nullable(DFA.DEAD));
+    }
+    @Test void test32() {
+        // Wide characters have classes and transitions of their own.
+        RegExp r = concat(string("x"), star(string("\u4e2d\u6587")), string("y"));
+        try {
+            new Matcher(r).match("x\u4e2d\u6587\u4e2d\u6587y");
+        } catch (Matcher.FailedMatch e) {
+            fail();
+        }
+        try {
+            new Matcher(r).match("x\u4e2d\u4e2dy");
+            fail();
+        } catch (Matcher.FailedMatch e) {
+        }
+    }
+    @Test void test33() {
+        RegExp r = star(string("ab"));
+        try {
+            BacktrackScanner sc = new BacktrackScanner(new StringReader("ababax"));
+            new Matcher(r).search(sc);
+            assertEquals("abab", sc.getToken());
+            sc.accept();
+            assertEquals(0, sc.depth());
+        } catch (Matcher.FailedMatch e) {
+            fail();
+        }
+    }
+    @Test void test34() {
+        RegExp r = star(range('a', 'z'));
+        Partition p = r.classes();
+        assertEquals(3, p.size());
+        assertEquals(p.classOf('b'), p.classOf('q'));
+        assertEquals(p.classOf('{'), p.classOf('\u4e2d'));
+        assert r.derivative('b') == r.derivative('q');
+        try {
+            new Matcher(r).match("derivative");
+        } catch (Matcher.FailedMatch e) {
+            fail();
+        }
+        try {
+            new Matcher(r).match("Derivative");
+            fail();
+        } catch (Matcher.FailedMatch e) {
+        }
+    }
+    @Test void test35() {
+        RegExp r = concat(string("<"), star(excludeRange('>', '>')), string(">"));
+        DFA d = r.dfa();
+        assertEquals(d.classes().classOf('a'), d.classes().classOf(0x1F600));
+        try {
+            new Matcher(r).match("<\u4e2d\uD83D\uDE00 a>");
+        } catch (Matcher.FailedMatch e) {
+            fail();
+        }
+    }
+    /** (a|b)*a(a|b)^n, whose DFA has 2^(n+1) states. */
+    private static RegExp nthFromLast(int n) {
+        RegExp[] rs = new RegExp[n + 2];
+        rs[0] = star(alt(string("a"), string("b")));
+        rs[1] = string("a");
+        for (int i = 2; i < rs.length; i++) rs[i] = alt(string("a"), string("b"));
+        return concat(rs);
+    }
+    @Test void test36() {
+        RegExp r = nthFromLast(12);
+        assertEquals(null, r.dfa());
+        LazyDFA d = new LazyDFA(r, 16);
+        java.util.Random random = new java.util.Random(1);
+        StringBuilder input = new StringBuilder();
+        int q = d.start();
+        for (int i = 0; i < 2000; i++) {
+            char c = random.nextBoolean() ? 'a' : 'b';
+            input.append(c);
+            q = d.step(q, c);
+            boolean expected = i >= 12 && input.charAt(i - 12) == 'a';
+            assertEquals(expected, d.nullable(q));
+            assertTrue(d.size() <= 16);
+        }
+        assertTrue(d.flushes() > 0);
+    }
+    @Test void test41() throws Parser.SyntaxError {
+        LazyDFA d = new LazyDFA(parse("(a|b)*a(a|b)(a|b)(a|b)(a|b)"), 1000);
+        java.util.Random random = new java.util.Random(2);
+        StringBuilder input = new StringBuilder();
+        int q = d.start();
+        for (int i = 0; i < 2000; i++) {
+            char c = random.nextBoolean() ? 'a' : 'b';
+            input.append(c);
+            q = d.step(q, c);
+            boolean expected = i >= 4 && input.charAt(i - 4) == 'a';
+            assertEquals(expected, d.nullable(q));
+        }
+        assertTrue(d.size() > 16);
+        assertEquals(0, d.flushes());
+    }
+    @Test void test42() {
+        RegExp r = nthFromLast(12);
+        assertTrue(r.dfa() == null);
+        try {
+            new Matcher(r).match("bbbabbbbabababab");
+        } catch (Matcher.FailedMatch e) {
+            fail();
+        }
+        try {
+            new Matcher(r).match("bbbbbabababaabab");
+            fail();
+        } catch (Matcher.FailedMatch e) {
+        }
+        try {
+            BacktrackScanner sc = new BacktrackScanner(new StringReader("bbbbabbbbbbbbbbbbb"));
+            new Matcher(r).search(sc);
+            assertEquals("bbbbabbbbbbbbbbbb", sc.getToken());
+        } catch (Matcher.FailedMatch e) {
+            fail();
+        }
+    }
+    @Test void test43() {
+        RegExp r = nthFromLast(16);
+        LazyDFA d = new LazyDFA(r, 64);
+        java.util.Random random = new java.util.Random(3);
+        int q = d.start();
+        for (int i = 0; i < 50_000; i++) q = d.step(q, random.nextBoolean() ? 'a' : 'b');
+        assertTrue(d.flushes() > 0);
+        // The derivatives memoized in r link only a few expressions, not every state
+        // the automaton went through.
+        java.util.Set<RegExp> seen = new java.util.HashSet<>();
+        java.util.ArrayDeque<RegExp> todo = new java.util.ArrayDeque<>();
+        todo.add(r);
+        while (!todo.isEmpty()) {
+            RegExp e = todo.remove();
+            if (!seen.add(e)) continue;
+            for (RegExp x : e.memoizedDerivatives()) if (x != null) todo.add(x);
+        }
+        assertTrue(seen.size() < 100, seen.size() + " expressions retained");
+    }
+    @Test void test44() {
+        Matcher m = new Matcher(alt(string("ab"), string("abcd")));
+        BacktrackScanner sc = new BacktrackScanner(new CharSequenceSource("abcx", "first"));
+        try {
+            m.search(sc);
+            assertEquals("ab", sc.getToken());
+            sc.reuse(new CharSequenceSource("abcd", "second"));
+            m.search(sc);
+            assertEquals("abcd", sc.getToken());
+        } catch (Matcher.FailedMatch e) {
+            fail();
+        }
+    }
+    @Test void test37() {
+        RegExp r = nthFromLast(3);
+        try {
+            new Matcher(r, 4).match("abbaabab");
+            new Matcher(r).match("bbbbabbb");
+        } catch (Matcher.FailedMatch e) {
+            fail();
+        }
+        try {
+            new Matcher(r, 4).match("abbbbaba");
+            fail();
+        } catch (Matcher.FailedMatch e) {
+        }
+        try {
+            BacktrackScanner sc = new BacktrackScanner(new StringReader("bbbabbbbbb"));
+            new Matcher(r, 4).search(sc);
+            assertEquals("bbbabbb", sc.getToken());
+        } catch (Matcher.FailedMatch e) {
+            fail();
+        }
+    }
+    @Test void test38() {
+        InternTable t = RegExp.internTable();
+        int max = t.maxSize();
+        long evictions = t.evictions();
+        try {
+            t.setMaxSize(100);
+            for (int i = 0; i < 1000; i++) string("interned" + i);
+            assertTrue(t.size() <= 100);
+            assertTrue(t.evictions() > evictions);
+            RegExp r = concat(string("x"), star(string("interned0")));
+            assertEquals(r, concat(string("x"), star(string("interned0"))));
+        } finally {
+            t.setMaxSize(max);
+        }
+    }
+    @Test void test39() throws InterruptedException {
+        RegExp[][] results = new RegExp[8][50];
+        Thread[] threads = new Thread[results.length];
+        for (int k = 0; k < threads.length; k++) {
+            RegExp[] mine = results[k];
+            threads[k] = new Thread(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    mine[i % 50] = star(string("shared" + i % 50));
+                }
+            });
+            threads[k].start();
+        }
+        for (Thread th : threads) th.join();
+        for (int i = 0; i < 50; i++) {
+            for (RegExp[] r : results) assert r[i] == results[0][i];
+        }
+    }
+    @Test void test40() throws InterruptedException {
+        Pattern[] patterns = {
+            Pattern.compile(concat(string("k"), star(range('0', '9')), string(";"))),
+            Pattern.compile(nthFromLast(6), 8)
+        };
+        boolean[] ok = new boolean[16];
+        Thread[] threads = new Thread[ok.length];
+        for (int k = 0; k < threads.length; k++) {
+            int id = k;
+            threads[k] = new Thread(() -> {
+                java.util.Random random = new java.util.Random(id);
+                try {
+                    for (int i = 0; i < 200; i++) {
+                        Matcher m = patterns[0].matcher();
+                        m.match("k" + random.nextInt(100000) + ";");
+                        BacktrackScanner sc = new BacktrackScanner(new StringReader("xx k12;k3"));
+                        m.search(sc);
+                        if (!sc.getToken().equals("k12;")) return;
+                        StringBuilder b = new StringBuilder();
+                        for (int j = 0; j < 20; j++) b.append(random.nextBoolean() ? 'a' : 'b');
+                        boolean expected = b.charAt(13) == 'a';
+                        try {
+                            patterns[1].matcher().match(b.toString());
+                            if (!expected) return;
+                        } catch (Matcher.FailedMatch e) {
+                            if (expected) return;
+                        }
+                    }
+                    ok[id] = true;
+                } catch (Matcher.FailedMatch e) {
+                    // leave ok[id] false
+                }
+            });
+            threads[k].start();
+        }
+        for (Thread th : threads) th.join();
+        for (boolean b : ok) assertTrue(b);
+    }
 }